@@ -0,0 +1,66 @@
+package dk.easv.bench;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.tournament.BotFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time per doMove for every local bot at a few fixed positions.
+ * TeacherBotREST is left out since it calls a web service.
+ *
+ * Bots that search until their time is up report roughly timePerMove,
+ * for those the interesting number is the allocation from -prof gc.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BotBenchmark {
+
+    @Param({"AlphaBetaBot", "DrunkenBot", "ExampleSneakyBot", "HyggeBot", "HyggeBot1000", "HyggeBot2000", "ImprovedSneakyBot",
+            "LocalPrioritisedListBot", "MCTSBot", "MyTunesITry", "ParallelSneakyBot", "PrioListOnSteroids", "RandomBot", "RandomBotOnSteroids",
+            "RootParallelMCTSBot", "ShadowBot", "TreeParallelMCTSBot"})
+    public String bot;
+
+    @Param({"opening", "midgame", "endgame"})
+    public String position;
+
+    @Param({"100"})
+    public int timePerMove;
+
+    private IBot instance;
+    private IGameState state;
+    private GameState snapshot;
+
+    @Setup
+    public void setup() throws ClassNotFoundException {
+        instance = BotFactory.create(BotFactory.botClass(bot));
+        state = Positions.byName(position);
+        state.setTimePerMove(timePerMove);
+        snapshot = new GameState(state);
+    }
+
+    @Benchmark
+    public IMove doMove() {
+        // Bots may change the state they get, so every call gets a fresh copy, like in GameManager
+        snapshot.copyFrom(state);
+        return instance.doMove(snapshot);
+    }
+}
@@ -0,0 +1,175 @@
+package dk.easv.bench;
+
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.field.Field;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+import dk.easv.bll.simulator.GameSimulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the game engine: move generation, playing moves, win checks,
+ * copying states and complete random games.
+ * Run with -prof gc to also get the allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EngineBenchmark {
+
+    @Param({"opening", "midgame", "endgame"})
+    public String position;
+
+    private IGameState state;
+    private IGameState bitboardState;
+    private GameState copyTarget;
+    private IMove lastMove;
+    private String lastPlayer;
+    private IMove nextMove;
+    private int[] game;
+    private final int[] buffer = new int[81];
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final GameSimulator simulator = new GameSimulator();
+    private GameManager manager;
+
+    @Setup
+    public void setup() {
+        state = Positions.byName(position);
+        bitboardState = new GameState(new BitboardField());
+        copyInto(state, bitboardState);
+        copyTarget = new GameState(state);
+        game = Positions.randomGame();
+
+        // Any occupied cell works for the win check, it looks at the whole microboard
+        String[][] board = state.getField().getBoard();
+        lastMove = Move.of(0, 0);
+        lastPlayer = "0";
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                if (!board[x][y].equals(IField.EMPTY_FIELD)) {
+                    lastMove = Move.of(x, y);
+                    lastPlayer = board[x][y];
+                }
+            }
+
+        manager = new GameManager(bitboardState);
+        manager.setCurrentPlayer(state.getMoveNumber() % 2);
+        nextMove = state.getField().getAvailableMoves().get(0);
+    }
+
+    @Benchmark
+    public List<IMove> fieldGetAvailableMoves() {
+        return state.getField().getAvailableMoves();
+    }
+
+    @Benchmark
+    public int fieldGetAvailableMovesBuffer() {
+        return state.getField().getAvailableMoves(buffer);
+    }
+
+    @Benchmark
+    public List<IMove> bitboardGetAvailableMoves() {
+        return bitboardState.getField().getAvailableMoves();
+    }
+
+    @Benchmark
+    public boolean isWin() {
+        return GameManager.isWin(state.getField().getBoard(), lastMove, lastPlayer);
+    }
+
+    @Benchmark
+    public IGameState copyGameState() {
+        return new GameState(state);
+    }
+
+    @Benchmark
+    public IGameState copyGameStateInto() {
+        copyTarget.copyFrom(state);
+        return copyTarget;
+    }
+
+    /**
+     * One move and its undo, on a GameManager with a BitboardField.
+     */
+    @Benchmark
+    public boolean makeUnmakeMove() {
+        manager.makeMove(nextMove);
+        return manager.unmakeMove();
+    }
+
+    /**
+     * A complete game through GameManager.updateGame(IMove) on the classic Field,
+     * the same moves every time. Includes creating the game.
+     */
+    @Benchmark
+    public GameManager.GameOverState updateGameField() {
+        return playGame(new GameState());
+    }
+
+    /**
+     * Same as updateGameField, on a BitboardField.
+     */
+    @Benchmark
+    public GameManager.GameOverState updateGameBitboard() {
+        return playGame(new GameState(new BitboardField()));
+    }
+
+    /**
+     * A random game from the empty board through GameManager, picking moves
+     * the way the simple bots do.
+     */
+    @Benchmark
+    public GameManager.GameOverState randomPlayoutGameManager() {
+        GameManager randomGame = new GameManager(new GameState(new BitboardField()));
+        IField field = randomGame.getCurrentState().getField();
+        while (randomGame.getGameOver() == GameManager.GameOverState.Active) {
+            int count = field.getAvailableMoves(buffer);
+            randomGame.updateGame(Move.ofIndex(buffer[random.nextInt(count)]));
+        }
+        return randomGame.getGameOver();
+    }
+
+    /**
+     * A random game from the empty board on the bots' GameSimulator.
+     */
+    @Benchmark
+    public int randomPlayoutSimulator() {
+        simulator.clear();
+        return simulator.randomPlayout(random);
+    }
+
+    private GameManager.GameOverState playGame(IGameState newState) {
+        GameManager fullGame = new GameManager(newState);
+        for (int move : game)
+            fullGame.updateGame(Move.ofIndex(move));
+        return fullGame.getGameOver();
+    }
+
+    private static void copyInto(IGameState from, IGameState to) {
+        to.getField().setBoard(from.getField().getBoard());
+        to.getField().setMacroboard(from.getField().getMacroboard());
+        to.setMoveNumber(from.getMoveNumber());
+        to.setRoundNumber(from.getRoundNumber());
+    }
+}
@@ -0,0 +1,71 @@
+package dk.easv.bench;
+
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.simulator.GameSimulator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Fixed positions for the benchmarks, made by playing random moves from a fixed seed,
+ * so every run measures the same positions.
+ */
+final class Positions {
+    private static final long SEED = 20190101L;
+
+    private Positions() {
+    }
+
+    /**
+     * @param name "opening" (empty board), "midgame" (20 moves) or "endgame" (45 moves)
+     * @return A new state with the position
+     */
+    static IGameState byName(String name) {
+        switch (name) {
+            case "opening":
+                return afterMoves(0);
+            case "midgame":
+                return afterMoves(20);
+            case "endgame":
+                return afterMoves(45);
+            default:
+                throw new IllegalArgumentException("Unknown position " + name);
+        }
+    }
+
+    /**
+     * Plays random moves until the game has the given number of moves.
+     * Games that end too early are thrown away and replayed with the next random numbers.
+     * @param moves The number of moves to play
+     * @return A new state with the position
+     */
+    static IGameState afterMoves(int moves) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] buffer = new int[81];
+        while (true) {
+            GameSimulator simulator = new GameSimulator();
+            while (simulator.getMoveNumber() < moves && simulator.getGameOver() == GameOverState.Active)
+                simulator.apply(buffer[random.nextInt(simulator.legalMoves(buffer))]);
+            if (simulator.getMoveNumber() == moves && simulator.getGameOver() == GameOverState.Active)
+                return simulator.toGameState();
+        }
+    }
+
+    /**
+     * @return The moves of one complete random game from the empty board, as cell indexes
+     */
+    static int[] randomGame() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] buffer = new int[81];
+        GameSimulator simulator = new GameSimulator();
+        int[] moves = new int[81];
+        int count = 0;
+        while (simulator.getGameOver() == GameOverState.Active) {
+            int move = buffer[random.nextInt(simulator.legalMoves(buffer))];
+            simulator.apply(move);
+            moves[count++] = move;
+        }
+        return Arrays.copyOf(moves, count);
+    }
+}
@@ -0,0 +1,159 @@
+package dk.easv.bll.book;
+
+import dk.easv.bll.game.PackedState;
+import dk.easv.bll.simulator.GameSimulator;
+import dk.easv.bll.simulator.Symmetry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Best moves for the first plies of the game, read from a file made by OpeningBookBuilder.
+ *
+ * The file is mapped into memory and searched where it lies, so opening it costs nothing and
+ * all bots share the same pages. Positions are stored once for all 8 symmetries (see Symmetry):
+ * the key is the position packed in its canonical orientation and the move is stored in that
+ * orientation too.
+ *
+ * File layout, big endian: the header is MAGIC, VERSION, the number of entries and the number
+ * of plies the book covers, followed by the entries sorted by key (high, then low, unsigned).
+ * An entry is the two longs of the PackedState, the move, the search depth and the score.
+ *
+ * A book is safe to use from several threads.
+ */
+public class OpeningBook {
+    private static final Logger LOGGER = Logger.getLogger(OpeningBook.class.getName());
+
+    public static final int MAGIC = 0x55545442; // "UTTB"
+    public static final int VERSION = 2; // 2: canonical orientation by smallest Zobrist key
+    public static final int HEADER_BYTES = 16;
+    public static final int ENTRY_BYTES = 20;
+
+    /**
+     * The file getDefault() loads, unless the system property uttt.book names another one.
+     */
+    public static final String DEFAULT_FILE = "opening.book";
+
+    private static final OpeningBook EMPTY = new OpeningBook(ByteBuffer.allocate(0), 0, 0);
+    private static volatile OpeningBook defaultBook;
+
+    private final ByteBuffer entries;
+    private final int size;
+    private final int plies;
+
+    private OpeningBook(ByteBuffer entries, int size, int plies) {
+        this.entries = entries;
+        this.size = size;
+        this.plies = plies;
+    }
+
+    /**
+     * @param file A book file
+     * @return The book, mapped into memory
+     * @throws IOException If the file can't be read or is not a book
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC)
+                throw new IOException(file + " is not an opening book");
+            if (buffer.getInt(4) != VERSION)
+                throw new IOException(file + " has book version " + buffer.getInt(4) + ", expected " + VERSION);
+            int size = buffer.getInt(8);
+            int plies = buffer.getInt(12);
+            if (buffer.limit() != HEADER_BYTES + (long) size * ENTRY_BYTES)
+                throw new IOException(file + " is truncated");
+            buffer.position(HEADER_BYTES);
+            return new OpeningBook(buffer.slice(), size, plies);
+        }
+    }
+
+    /**
+     * The book the bots use. It is opened the first time it is asked for, and is empty
+     * if the file does not exist or can't be read.
+     * @return The book, never null
+     */
+    public static OpeningBook getDefault() {
+        OpeningBook book = defaultBook;
+        if (book == null) {
+            synchronized (OpeningBook.class) {
+                book = defaultBook;
+                if (book == null) {
+                    book = openDefault();
+                    defaultBook = book;
+                }
+            }
+        }
+        return book;
+    }
+
+    private static OpeningBook openDefault() {
+        Path file = Paths.get(System.getProperty("uttt.book", DEFAULT_FILE));
+        if (!Files.exists(file))
+            return EMPTY;
+        try {
+            OpeningBook book = open(file);
+            LOGGER.info(() -> "Opening book " + file + ": " + book.size() + " positions, " + book.getPlies() + " plies");
+            return book;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Could not read the opening book, playing without it", ex);
+            return EMPTY;
+        }
+    }
+
+    /**
+     * @param simulator The position
+     * @return The book move as a cell index, or -1 if the position is not in the book
+     */
+    public int lookup(GameSimulator simulator) {
+        if (size == 0 || simulator.getMoveNumber() >= plies)
+            return -1;
+        int symmetry = Symmetry.canonical(simulator);
+        int entry = find(Symmetry.pack(simulator, symmetry));
+        if (entry < 0)
+            return -1;
+        int move = Symmetry.unmove(symmetry, entries.get(entry * ENTRY_BYTES + 16));
+        return simulator.isLegal(move) ? move : -1;
+    }
+
+    /**
+     * @return The number of positions in the book
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The book has positions with a move number below this
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    private int find(PackedState key) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = middle * ENTRY_BYTES;
+            int compare = Long.compareUnsigned(entries.getLong(offset), key.getHigh());
+            if (compare == 0)
+                compare = Long.compareUnsigned(entries.getLong(offset + 8), key.getLow());
+            if (compare < 0)
+                low = middle + 1;
+            else if (compare > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+}
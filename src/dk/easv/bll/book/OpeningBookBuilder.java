@@ -0,0 +1,180 @@
+package dk.easv.bll.book;
+
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.PackedState;
+import dk.easv.bll.search.AlphaBetaSearch;
+import dk.easv.bll.simulator.GameSimulator;
+import dk.easv.bll.simulator.Symmetry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Builds an opening book: every position of the first plies, one per symmetry class,
+ * gets a deep AlphaBetaSearch, and the best moves are written to a file OpeningBook can read.
+ *
+ * The number of positions grows quickly: 15 after one move, 102 after two, 822 after three,
+ * so the time per position has to come down as the plies go up.
+ */
+public class OpeningBookBuilder {
+    private int plies = 3;
+    private int timePerPosition = 1000;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private IntConsumer progress = done -> { };
+
+    /**
+     * @param plies The book gets the positions with fewer moves than this
+     */
+    public OpeningBookBuilder setPlies(int plies) {
+        this.plies = plies;
+        return this;
+    }
+
+    /**
+     * @param timePerPosition Milliseconds of search per position
+     */
+    public OpeningBookBuilder setTimePerPosition(int timePerPosition) {
+        this.timePerPosition = timePerPosition;
+        return this;
+    }
+
+    public OpeningBookBuilder setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * @param progress Gets the number of positions searched so far, from the search threads
+     */
+    public OpeningBookBuilder setProgress(IntConsumer progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    /**
+     * @return One position per symmetry class for every ply below plies, in ply order
+     */
+    public List<GameSimulator> positions() {
+        Map<PackedState, GameSimulator> all = new LinkedHashMap<>();
+        List<GameSimulator> level = new ArrayList<>();
+        level.add(new GameSimulator());
+        int[] moves = new int[81];
+        for (int ply = 0; ply < plies && !level.isEmpty(); ply++) {
+            List<GameSimulator> next = new ArrayList<>();
+            for (GameSimulator position : level) {
+                if (all.putIfAbsent(canonicalKey(position), position) != null)
+                    continue;
+                int count = position.legalMoves(moves);
+                for (int i = 0; i < count; i++) {
+                    GameSimulator child = position.copy();
+                    child.apply(moves[i]);
+                    if (child.getGameOver() == GameOverState.Active)
+                        next.add(child);
+                }
+            }
+            level = next;
+        }
+        return new ArrayList<>(all.values());
+    }
+
+    /**
+     * Searches every position and writes the book.
+     * @param file The book file, it is replaced
+     * @return The number of positions in the book
+     * @throws IOException If the file can't be written
+     */
+    public int build(Path file) throws IOException {
+        List<GameSimulator> positions = positions();
+        Result[] results = search(positions);
+
+        Integer[] order = new Integer[positions.size()];
+        PackedState[] keys = new PackedState[positions.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            keys[i] = canonicalKey(positions.get(i));
+        }
+        Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(order.length);
+            out.writeInt(plies);
+            for (int i : order) {
+                out.writeLong(keys[i].getHigh());
+                out.writeLong(keys[i].getLow());
+                out.writeByte(results[i].move);
+                out.writeByte(results[i].depth);
+                out.writeShort(results[i].score);
+            }
+        }
+        return order.length;
+    }
+
+    private Result[] search(List<GameSimulator> positions) throws IOException {
+        Result[] results = new Result[positions.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    AlphaBetaSearch search = new AlphaBetaSearch();
+                    for (int i = next.getAndIncrement(); i < positions.size(); i = next.getAndIncrement()) {
+                        GameSimulator position = positions.get(i);
+                        int move = search.search(position, System.nanoTime() + timePerPosition * 1_000_000L);
+                        results[i] = new Result(Symmetry.move(Symmetry.canonical(position), move),
+                                Math.min(search.getCompletedDepth(), Byte.MAX_VALUE),
+                                Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, search.getScore())));
+                        progress.accept(done.incrementAndGet());
+                    }
+                }));
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building the book", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Book search failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static PackedState canonicalKey(GameSimulator position) {
+        return Symmetry.pack(position, Symmetry.canonical(position));
+    }
+
+    /**
+     * A searched position: the move in the canonical orientation, the depth and the score.
+     */
+    private static class Result {
+        final int move;
+        final int depth;
+        final int score;
+
+        Result(int move, int depth, int score) {
+            this.move = move;
+            this.depth = depth;
+            this.score = score;
+        }
+    }
+}
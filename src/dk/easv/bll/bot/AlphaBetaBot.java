@@ -0,0 +1,75 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.book.OpeningBook;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+import dk.easv.bll.search.AlphaBetaSearch;
+import dk.easv.bll.search.EndgameSolver;
+import dk.easv.bll.search.TimeManager;
+import dk.easv.bll.simulator.GameSimulator;
+
+import java.util.logging.Logger;
+
+/**
+ * Iterative deepening alpha-beta with a transposition table, see AlphaBetaSearch.
+ * Unlike HyggeBot's minimax, running out of time never gives a half searched result:
+ * the move comes from the last depth that was searched to the end.
+ * Positions in the opening book (see OpeningBook) are played from the book without searching.
+ * With few empty cells left the position is solved exactly first, see EndgameSolver.
+ * The time for the move is planned by a TimeManager: no new depth is started after its
+ * soft deadline, and the search stops at the hard one.
+ */
+public class AlphaBetaBot implements IBot {
+    private static final Logger LOGGER = Logger.getLogger(AlphaBetaBot.class.getName());
+
+    private final String BOT_NAME = getClass().getSimpleName();
+    private final OpeningBook book = OpeningBook.getDefault(); // Opened here, it takes too long for the first move
+    private final TimeManager time = new TimeManager();
+    private AlphaBetaSearch search;
+    private EndgameSolver endgame;
+
+    @Override
+    public IMove doMove(IGameState state) {
+        long start = System.nanoTime();
+        GameSimulator position = new GameSimulator(state);
+        time.start(start, state.getTimePerMove(), position);
+        int move = chooseMove(position);
+        time.finish();
+        return Move.ofIndex(move);
+    }
+
+    private int chooseMove(GameSimulator position) {
+        if (time.getOnlyMove() >= 0)
+            return time.getOnlyMove();
+        int bookMove = book.lookup(position);
+        if (bookMove >= 0)
+            return bookMove;
+        if (search == null) {
+            search = new AlphaBetaSearch();
+            endgame = new EndgameSolver();
+        }
+        int solved = endgame.solveMove(position, time.getStartNanos(), time.getHardDeadline());
+        if (solved >= 0) {
+            LOGGER.fine(() -> String.format("%s: solved, result %d, %d nodes",
+                    BOT_NAME, endgame.getResult(), endgame.getNodes()));
+            return solved;
+        }
+        int move = search.search(position, time.getSoftDeadline(), time.getHardDeadline());
+        LOGGER.fine(() -> String.format("%s: depth %d, score %d, %d nodes, critical %b",
+                BOT_NAME, search.getCompletedDepth(), search.getScore(), search.getNodes(), time.isCritical()));
+        return move;
+    }
+
+    /**
+     * @return The last depth the bot searched to the end
+     */
+    public int getLastDepth() {
+        return search == null ? 0 : search.getCompletedDepth();
+    }
+
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
+    }
+}
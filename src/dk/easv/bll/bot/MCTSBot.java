@@ -0,0 +1,147 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.book.OpeningBook;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+import dk.easv.bll.search.EndgameSolver;
+import dk.easv.bll.search.MctsSearch;
+import dk.easv.bll.search.MctsTree;
+import dk.easv.bll.search.RootParallelMcts;
+import dk.easv.bll.search.SharedMctsTree;
+import dk.easv.bll.search.TimeManager;
+import dk.easv.bll.simulator.GameSimulator;
+
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Monte Carlo tree search with UCT, see MctsTree.
+ * The tree is kept between moves: after playing, the subtree of our move is kept, and on
+ * the next call the subtree of the opponent's reply, so the search goes on where it stopped.
+ *
+ * Positions in the opening book (see OpeningBook) are played from the book without searching.
+ * With few empty cells left the position is solved exactly first, see EndgameSolver.
+ * The search runs until the soft deadline of a TimeManager.
+ *
+ * The search can run on several threads, see Parallelism. RootParallelMCTSBot and
+ * TreeParallelMCTSBot use every core.
+ */
+public class MCTSBot implements IBot {
+    private static final Logger LOGGER = Logger.getLogger(MCTSBot.class.getName());
+
+    public enum Parallelism {
+        None, // One thread, one tree
+        Root, // A tree per thread, the root moves' visits are added up (RootParallelMcts)
+        Tree  // All threads share one tree (SharedMctsTree)
+    }
+
+    private final String BOT_NAME = getClass().getSimpleName();
+    private final OpeningBook book = OpeningBook.getDefault(); // Opened here, it takes too long for the first move
+    private final Parallelism parallelism;
+    private final int threads;
+    private final Random random = new Random();
+    private final TimeManager time = new TimeManager();
+    private MctsSearch search;
+    private EndgameSolver endgame;
+    private int lastPlayouts;
+    private double lastPlayoutsPerSecond;
+
+    public MCTSBot() {
+        this(Parallelism.None, 1);
+    }
+
+    /**
+     * @param parallelism How to use the threads
+     * @param threads The number of search threads, ignored with Parallelism.None
+     */
+    public MCTSBot(Parallelism parallelism, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, was " + threads);
+        this.parallelism = parallelism;
+        this.threads = parallelism == Parallelism.None ? 1 : threads;
+    }
+
+    @Override
+    public IMove doMove(IGameState state) {
+        long start = System.nanoTime();
+        GameSimulator position = new GameSimulator(state);
+        time.start(start, state.getTimePerMove(), position);
+        lastPlayouts = 0;
+        IMove move = chooseMove(state, position);
+        time.finish();
+        return move;
+    }
+
+    private IMove chooseMove(IGameState state, GameSimulator position) {
+        if (time.getOnlyMove() >= 0)
+            return Move.ofIndex(time.getOnlyMove());
+        int bookMove = book.lookup(position);
+        if (bookMove >= 0)
+            return Move.ofIndex(bookMove);
+        if (search == null) {
+            search = createSearch();
+            endgame = new EndgameSolver();
+        }
+        long start = time.getStartNanos();
+        int solved = endgame.solveMove(position, start, time.getHardDeadline());
+        if (solved >= 0) {
+            LOGGER.fine(() -> String.format("%s: solved, result %d, %d nodes",
+                    BOT_NAME, endgame.getResult(), endgame.getNodes()));
+            return Move.ofIndex(solved);
+        }
+        search.moveTo(position);
+        lastPlayouts = search.search(time.getSoftDeadline());
+        lastPlayoutsPerSecond = lastPlayouts * 1e9 / Math.max(1, System.nanoTime() - start);
+        LOGGER.fine(() -> String.format("%s: %d playouts, %.0f playouts/s on %d threads",
+                BOT_NAME, lastPlayouts, lastPlayoutsPerSecond, threads));
+
+        int best = search.bestMove();
+        if (best < 0) {
+            // Only if the tree could not even add the root's children
+            List<IMove> moves = state.getField().getAvailableMoves();
+            return moves.get(random.nextInt(moves.size()));
+        }
+        search.advance(best);
+        return Move.ofIndex(best);
+    }
+
+    private MctsSearch createSearch() {
+        switch (parallelism) {
+            case Root:
+                return new RootParallelMcts(threads);
+            case Tree:
+                return new SharedMctsTree(threads);
+            default:
+                return new MctsTree();
+        }
+    }
+
+    /**
+     * @return The number of playouts in the last doMove, over all threads
+     */
+    public int getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    /**
+     * @return The playouts per second in the last doMove, over all threads
+     */
+    public double getLastPlayoutsPerSecond() {
+        return lastPlayoutsPerSecond;
+    }
+
+    public Parallelism getParallelism() {
+        return parallelism;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
+    }
+}
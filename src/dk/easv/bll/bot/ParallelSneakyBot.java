@@ -0,0 +1,52 @@
+package dk.easv.bll.bot;
+
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+import dk.easv.bll.search.PlayoutService;
+import dk.easv.bll.search.PlayoutStats;
+import dk.easv.bll.search.TimeManager;
+import dk.easv.bll.simulator.GameSimulator;
+
+/**
+ * ExampleSneakyBot grown up: instead of playing the first move that won a random game, it plays
+ * heavy playouts (PlayoutService.Policy.Heavy) for every move on all cores and picks the move
+ * with the best score, wins plus half the draws over its playouts (PlayoutStats.bestMove()).
+ * It plays until the soft deadline of a TimeManager.
+ */
+public class ParallelSneakyBot implements IBot {
+    private final String BOT_NAME = getClass().getSimpleName();
+    private final TimeManager time = new TimeManager();
+    private PlayoutService playouts;
+    private long lastPlayouts;
+
+    @Override
+    public IMove doMove(IGameState state) {
+        long start = System.nanoTime();
+        GameSimulator position = new GameSimulator(state);
+        time.start(start, state.getTimePerMove(), position);
+        int move = time.getOnlyMove();
+        lastPlayouts = 0;
+        if (move < 0) {
+            if (playouts == null)
+                playouts = new PlayoutService().setPolicy(PlayoutService.Policy.Heavy);
+            PlayoutStats stats = playouts.runUntil(position, time.getSoftDeadline());
+            lastPlayouts = stats.getTotalPlayouts();
+            move = stats.bestMove();
+        }
+        time.finish();
+        return Move.ofIndex(move);
+    }
+
+    /**
+     * @return The number of playouts in the last doMove
+     */
+    public long getLastPlayouts() {
+        return lastPlayouts;
+    }
+
+    @Override
+    public String getBotName() {
+        return BOT_NAME;
+    }
+}
@@ -0,0 +1,11 @@
+package dk.easv.bll.bot;
+
+/**
+ * MCTSBot with Parallelism.Root on every core.
+ */
+public class RootParallelMCTSBot extends MCTSBot {
+
+    public RootParallelMCTSBot() {
+        super(Parallelism.Root, Runtime.getRuntime().availableProcessors());
+    }
+}
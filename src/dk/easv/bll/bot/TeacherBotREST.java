@@ -52,7 +52,7 @@ public class TeacherBotREST implements IBot{
         }
 
         Move move = gson.fromJson(response.body(), Move.class);
-        return move;
+        return Move.of(move.getX(), move.getY());
     }
 
     @Override
@@ -0,0 +1,11 @@
+package dk.easv.bll.bot;
+
+/**
+ * MCTSBot with Parallelism.Tree on every core.
+ */
+public class TreeParallelMCTSBot extends MCTSBot {
+
+    public TreeParallelMCTSBot() {
+        super(Parallelism.Tree, Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,298 @@
+package dk.easv.bll.field;
+
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An IField that keeps the board in primitive bitmasks instead of Strings.
+ * Each player has one 9 bit mask per microboard, where bit (x%3)*3+(y%3) is set
+ * when the player owns that cell. Microboards are numbered (x/3)*3+(y/3), which
+ * is also the bit used in the macroboard masks.
+ *
+ * getBoard() and getMacroboard() are materialised the first time they are asked
+ * for and kept in sync afterwards, so existing bots can keep reading them.
+ * They are views: writing into the returned arrays does not change the field,
+ * use setPlayerId, setMacroboardId, setBoard or setMacroboard for that.
+ */
+public class BitboardField implements IField {
+
+    public static final String PLAYER_0 = "0";
+    public static final String PLAYER_1 = "1";
+    public static final String TIE_FIELD = "TIE";
+
+    public static final int FULL_MASK = 0x1FF;
+
+    private final int[][] micro = new int[2][9];
+    private final int[] macroWon = new int[2];
+    private int macroTie;
+    private int macroAvailable;
+
+    private String[][] boardView;
+    private String[][] macroboardView;
+
+    public BitboardField() {
+        clearBoard();
+    }
+
+    @Override
+    public void clearBoard() {
+        for (int i = 0; i < 9; i++) {
+            micro[0][i] = 0;
+            micro[1][i] = 0;
+        }
+        macroWon[0] = 0;
+        macroWon[1] = 0;
+        macroTie = 0;
+        macroAvailable = FULL_MASK;
+
+        if (boardView != null)
+            fillBoardView();
+        if (macroboardView != null)
+            fillMacroboardView();
+    }
+
+    @Override
+    public List<IMove> getAvailableMoves() {
+        List<IMove> availMoves = new ArrayList<>();
+
+        // Same x/y order as Field, some bots rely on the first available move
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int board = microboardIndex(x, y);
+                if ((macroAvailable & (1 << board)) != 0
+                        && ((micro[0][board] | micro[1][board]) & cellBit(x, y)) == 0) {
+                    availMoves.add(Move.of(x, y));
+                }
+            }
+
+        return availMoves;
+    }
+
+    @Override
+    public int getAvailableMoves(int[] buffer) {
+        int count = 0;
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int board = microboardIndex(x, y);
+                if ((macroAvailable & (1 << board)) != 0
+                        && ((micro[0][board] | micro[1][board]) & cellBit(x, y)) == 0) {
+                    buffer[count++] = x * 9 + y;
+                }
+            }
+        return count;
+    }
+
+    @Override
+    public int getAvailableMovesMask(int microboard) {
+        if ((macroAvailable & (1 << microboard)) == 0)
+            return 0;
+        return ~(micro[0][microboard] | micro[1][microboard]) & FULL_MASK;
+    }
+
+    @Override
+    public int countAvailableMoves() {
+        int count = 0;
+        for (int boards = macroAvailable; boards != 0; boards &= boards - 1) {
+            int board = Integer.numberOfTrailingZeros(boards);
+            count += 9 - Integer.bitCount(micro[0][board] | micro[1][board]);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean hasAvailableMoves() {
+        for (int boards = macroAvailable; boards != 0; boards &= boards - 1) {
+            int board = Integer.numberOfTrailingZeros(boards);
+            if ((micro[0][board] | micro[1][board]) != FULL_MASK)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String getPlayerId(int column, int row) {
+        int board = microboardIndex(column, row);
+        int bit = cellBit(column, row);
+        if ((micro[0][board] & bit) != 0)
+            return PLAYER_0;
+        if ((micro[1][board] & bit) != 0)
+            return PLAYER_1;
+        return EMPTY_FIELD;
+    }
+
+    @Override
+    public void setPlayerId(int column, int row, String playerId) {
+        int board = microboardIndex(column, row);
+        int bit = cellBit(column, row);
+        micro[0][board] &= ~bit;
+        micro[1][board] &= ~bit;
+
+        int player = playerIndex(playerId);
+        if (player >= 0)
+            micro[player][board] |= bit;
+
+        if (boardView != null)
+            boardView[column][row] = getPlayerId(column, row);
+    }
+
+    @Override
+    public void setMacroboardId(int column, int row, String id) {
+        int bit = 1 << (column * 3 + row);
+        macroWon[0] &= ~bit;
+        macroWon[1] &= ~bit;
+        macroTie &= ~bit;
+        macroAvailable &= ~bit;
+
+        if (AVAILABLE_FIELD.equals(id))
+            macroAvailable |= bit;
+        else if (TIE_FIELD.equals(id))
+            macroTie |= bit;
+        else {
+            int player = playerIndex(id);
+            if (player >= 0)
+                macroWon[player] |= bit;
+        }
+
+        if (macroboardView != null)
+            macroboardView[column][row] = getMacroboardId(column, row);
+    }
+
+    /**
+     * Returns the status of a microboard, using the same values as getMacroboard().
+     * @param column Column in the macroboard (0-2)
+     * @param row Row in the macroboard (0-2)
+     * @return String
+     */
+    public String getMacroboardId(int column, int row) {
+        int bit = 1 << (column * 3 + row);
+        if ((macroAvailable & bit) != 0)
+            return AVAILABLE_FIELD;
+        if ((macroWon[0] & bit) != 0)
+            return PLAYER_0;
+        if ((macroWon[1] & bit) != 0)
+            return PLAYER_1;
+        if ((macroTie & bit) != 0)
+            return TIE_FIELD;
+        return EMPTY_FIELD;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (int i = 0; i < 9; i++) {
+            if ((micro[0][i] | micro[1][i]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isFull() {
+        for (int i = 0; i < 9; i++) {
+            if ((micro[0][i] | micro[1][i]) != FULL_MASK)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Boolean isInActiveMicroboard(int x, int y) {
+        return (macroAvailable & (1 << microboardIndex(x, y))) != 0;
+    }
+
+    @Override
+    public String[][] getBoard() {
+        if (boardView == null) {
+            boardView = new String[9][9];
+            fillBoardView();
+        }
+        return boardView;
+    }
+
+    @Override
+    public String[][] getMacroboard() {
+        if (macroboardView == null) {
+            macroboardView = new String[3][3];
+            fillMacroboardView();
+        }
+        return macroboardView;
+    }
+
+    @Override
+    public void setBoard(String[][] board) {
+        for (int i = 0; i < 9; i++) {
+            micro[0][i] = 0;
+            micro[1][i] = 0;
+        }
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int player = playerIndex(board[x][y]);
+                if (player >= 0)
+                    micro[player][microboardIndex(x, y)] |= cellBit(x, y);
+            }
+
+        if (boardView != null)
+            fillBoardView();
+    }
+
+    @Override
+    public void setMacroboard(String[][] macroboard) {
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++)
+                setMacroboardId(x, y, macroboard[x][y]);
+    }
+
+    @Override
+    public int getMicroboardMask(int player, int microboard) {
+        return micro[player][microboard];
+    }
+
+    @Override
+    public int getMacroboardMask(int player) {
+        return macroWon[player];
+    }
+
+    /**
+     * @return The 9 bit mask of microboards that ended in a tie
+     */
+    public int getTiedMicroboards() {
+        return macroTie;
+    }
+
+    /**
+     * @return The 9 bit mask of microboards that can currently be played in
+     */
+    public int getAvailableMicroboards() {
+        return macroAvailable;
+    }
+
+    public static int microboardIndex(int x, int y) {
+        return (x / 3) * 3 + (y / 3);
+    }
+
+    public static int cellBit(int x, int y) {
+        return 1 << ((x % 3) * 3 + (y % 3));
+    }
+
+    private static int playerIndex(String playerId) {
+        if (PLAYER_0.equals(playerId))
+            return 0;
+        if (PLAYER_1.equals(playerId))
+            return 1;
+        return -1;
+    }
+
+    private void fillBoardView() {
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++)
+                boardView[x][y] = getPlayerId(x, y);
+    }
+
+    private void fillMacroboardView() {
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++)
+                macroboardView[x][y] = getMacroboardId(x, y);
+    }
+}
@@ -17,7 +17,6 @@ public class Field implements IField{
 
     @Override
     public void clearBoard() {
-        board = new String[9][9];
         for (int i = 0; i < board.length; i++)
             for (int k = 0; k < board[i].length; k++) {
                 board[i][k] = EMPTY_FIELD;
@@ -35,13 +34,39 @@ public class Field implements IField{
         for (int i = 0; i < board.length; i++)
             for (int k = 0; k < board[i].length; k++) {
                 if(isInActiveMicroboard(i,k) && board[i][k].equals(EMPTY_FIELD)) {
-                    availMoves.add(new Move(i,k));
+                    availMoves.add(Move.of(i,k));
                 }
         }
 
         return availMoves;
     }
 
+    @Override
+    public int getAvailableMoves(int[] buffer) {
+        int count = 0;
+        for (int i = 0; i < board.length; i++)
+            for (int k = 0; k < board[i].length; k++) {
+                if(macroBoard[i/3][k/3].equals(AVAILABLE_FIELD) && board[i][k].equals(EMPTY_FIELD)) {
+                    buffer[count++] = i*9 + k;
+                }
+            }
+        return count;
+    }
+
+    @Override
+    public boolean hasAvailableMoves() {
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if(!macroBoard[i][k].equals(AVAILABLE_FIELD))
+                    continue;
+                for (int x = i*3; x < i*3+3; x++)
+                    for (int y = k*3; y < k*3+3; y++)
+                        if(board[x][y].equals(EMPTY_FIELD))
+                            return true;
+            }
+        return false;
+    }
+
     @Override
     public String getPlayerId(int column, int row) {
         return board[column][row];
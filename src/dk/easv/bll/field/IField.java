@@ -24,6 +24,62 @@ public interface IField {
      */
     List<IMove> getAvailableMoves();
 
+    /**
+     * Allocation free version of getAvailableMoves(). The moves are written as
+     * indexes x*9+y into the buffer, in the same order as getAvailableMoves().
+     * @param buffer Buffer to fill, must hold at least 81 moves
+     * @return The number of moves written to the buffer
+     */
+    default int getAvailableMoves(int[] buffer) {
+        int count = 0;
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                if (isInActiveMicroboard(x, y) && getPlayerId(x, y).equals(EMPTY_FIELD))
+                    buffer[count++] = x * 9 + y;
+            }
+        return count;
+    }
+
+    /**
+     * Returns the free cells of an active microboard as a 9 bit mask,
+     * where bit (x%3)*3+(y%3) is set when (x,y) can be played.
+     * @param microboard Microboard index, (x/3)*3+(y/3)
+     * @return 9 bit mask, 0 when the microboard is not active
+     */
+    default int getAvailableMovesMask(int microboard) {
+        int startX = (microboard / 3) * 3;
+        int startY = (microboard % 3) * 3;
+        if (!isInActiveMicroboard(startX, startY))
+            return 0;
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (getPlayerId(startX + i, startY + k).equals(EMPTY_FIELD))
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+
+    /**
+     * @return The number of available moves, without building the list
+     */
+    default int countAvailableMoves() {
+        int count = 0;
+        for (int microboard = 0; microboard < 9; microboard++)
+            count += Integer.bitCount(getAvailableMovesMask(microboard));
+        return count;
+    }
+
+    /**
+     * @return Returns true if there is at least one available move
+     */
+    default boolean hasAvailableMoves() {
+        for (int microboard = 0; microboard < 9; microboard++)
+            if (getAvailableMovesMask(microboard) != 0)
+                return true;
+        return false;
+    }
+
     /**
      * Returns the player id on given column and row
      * @param column Column
@@ -32,6 +88,64 @@ public interface IField {
      */
     String getPlayerId(int column, int row);
 
+    /**
+     * Sets the player id on given column and row
+     * @param column Column
+     * @param row Row
+     * @param playerId The player id, or EMPTY_FIELD
+     */
+    default void setPlayerId(int column, int row, String playerId) {
+        getBoard()[column][row] = playerId;
+    }
+
+    /**
+     * Sets the status of a single microboard in the macroboard (3x3)
+     * @param column Column
+     * @param row Row
+     * @param id The winning player id, "TIE", AVAILABLE_FIELD or EMPTY_FIELD
+     */
+    default void setMacroboardId(int column, int row, String id) {
+        getMacroboard()[column][row] = id;
+    }
+
+    /**
+     * Returns the cells a player owns in a microboard as a 9 bit mask,
+     * where bit (x%3)*3+(y%3) is set when the player owns (x,y).
+     * @param player 0 or 1
+     * @param microboard Microboard index, (x/3)*3+(y/3)
+     * @return 9 bit mask
+     */
+    default int getMicroboardMask(int player, int microboard) {
+        String playerId = player + "";
+        int startX = (microboard / 3) * 3;
+        int startY = (microboard % 3) * 3;
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (getPlayerId(startX + i, startY + k).equals(playerId))
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+
+    /**
+     * Returns the microboards won by a player as a 9 bit mask,
+     * where bit x*3+y is set when the player has won macroboard cell (x,y).
+     * @param player 0 or 1
+     * @return 9 bit mask
+     */
+    default int getMacroboardMask(int player) {
+        String playerId = player + "";
+        String[][] macroboard = getMacroboard();
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (macroboard[i][k].equals(playerId))
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+
     boolean isEmpty();
 
     /**
@@ -2,8 +2,19 @@ package dk.easv.bll.game;
 
 import dk.easv.bll.bot.IBot;
 import dk.easv.bll.field.IField;
+import dk.easv.bll.game.stats.MoveStats;
 import dk.easv.bll.move.IMove;
-import dk.easv.bll.move.Move;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is a proposed GameManager for Ultimate Tic-Tac-Toe,
@@ -31,6 +42,29 @@ public class GameManager {
         Win,
         Tie
     }
+
+    /**
+     * What happens when a bot doesn't return a move within the time per move.
+     */
+    public enum TimeoutPolicy{
+        Forfeit,    // updateGame() returns false, like an invalid move
+        RandomMove  // A random legal move is played for the bot
+    }
+
+    // Extra time on top of the time per move, for thread scheduling
+    private static final int DEADLINE_GRACE_MS = 50;
+    // Platform threads rather than virtual threads: bots are CPU bound, and a bot that runs over
+    // would keep a virtual thread's carrier busy and starve the other games' bots
+    private static final ExecutorService BOT_EXECUTOR = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "bot-move");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // A bot that runs over is interrupted, but a CPU bound bot ignores that and keeps its thread.
+    // Those abandoned calls are counted over all games, and while there are this many no new
+    // bot calls are started, so a bot that never returns can't start a thread per game.
+    private static final int MAX_ABANDONED_MOVES = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final AtomicInteger ABANDONED_MOVES = new AtomicInteger();
     
     private final IGameState currentState;
     private int currentPlayer = 0; //player0 == 0 && player1 == 1
@@ -38,6 +72,14 @@ public class GameManager {
     private IBot bot = null;
     private IBot bot2 = null;
     private volatile GameOverState gameOver = GameOverState.Active;
+    private final UndoRecord[] undoStack = new UndoRecord[81]; // A game never lasts more than 81 moves
+    private int undoCount = 0;
+    private long zobristKey;
+    private final GameState[] botStates = new GameState[2]; // Reused snapshot per bot, see snapshotFor
+    private TimeoutPolicy timeoutPolicy = null; // null: bots run on the caller's thread without a deadline
+    private final BotCall[] runningCalls = new BotCall[2]; // The last call per bot, see BotCall.isBusy
+    private final int[] timeouts = new int[2];
+    private final MoveStats[] moveStats = new MoveStats[2];
 
     public void setGameOver(GameOverState state) {
         gameOver = state;
@@ -47,16 +89,59 @@ public class GameManager {
     }
 
     public void setCurrentPlayer(int player) {
+        if(player != currentPlayer)
+            zobristKey ^= Zobrist.side();
         currentPlayer = player;
     }
     public int getCurrentPlayer() {
         return currentPlayer;
     }
 
+    /**
+     * Makes bots move on a separate thread with a deadline of the state's time per move.
+     * A bot that runs over keeps running in the background, but the game goes on without it.
+     * If it is still busy when it is its turn again, that turn is a timeout too,
+     * so a bot is never asked for two moves at the same time.
+     * A bot that runs over is interrupted and its call abandoned. While too many abandoned calls,
+     * over all games, are still running, every bot move is a timeout without calling the bot,
+     * so runaway bots can't take up more and more threads.
+     * @param policy What to do on a timeout, or null to call bots directly without a deadline
+     */
+    public void setTimeoutPolicy(TimeoutPolicy policy) {
+        timeoutPolicy = policy;
+    }
+
+    /**
+     * Records the move times, timeouts and invalid moves of a player's bot.
+     * The same MoveStats can be given to several games, also on different threads.
+     * @param player 0 or 1
+     * @param stats Where to record, or null to stop recording
+     */
+    public void setMoveStats(int player, MoveStats stats) {
+        moveStats[player] = stats;
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return The number of moves the player's bot didn't make in time
+     */
+    public int getTimeouts(int player) {
+        return timeouts[player];
+    }
+
     public IGameState getCurrentState()
     {
         return currentState;
     }
+
+    /**
+     * The Zobrist key of the current position, kept up to date as moves are played.
+     * @return 64 bit key, see Zobrist
+     */
+    public long getZobristKey()
+    {
+        return zobristKey;
+    }
     private boolean playerGoesFirst = false;
     /**
      * Set's the currentState so the game can begin.
@@ -66,6 +151,7 @@ public class GameManager {
      */
     public GameManager(IGameState currentState) {
         this.currentState = currentState;
+        zobristKey = Zobrist.hash(currentState.getField(), currentPlayer);
         mode = GameMode.HumanVsHuman;
     }
 
@@ -78,6 +164,7 @@ public class GameManager {
      */
     public GameManager(IGameState currentState, IBot bot, boolean humanPlaysFirst) {
         this.currentState = currentState;
+        zobristKey = Zobrist.hash(currentState.getField(), currentPlayer);
         playerGoesFirst=humanPlaysFirst;
         mode = GameMode.HumanVsBot;
         this.bot = bot;
@@ -93,6 +180,7 @@ public class GameManager {
      */
     public GameManager(IGameState currentState, IBot bot, IBot bot2) {
         this.currentState = currentState;
+        zobristKey = Zobrist.hash(currentState.getField(), currentPlayer);
         mode = GameMode.BotVsBot;
         this.bot = bot;
         this.bot2 = bot2;
@@ -110,10 +198,49 @@ public class GameManager {
         
         updateBoard(move);
         currentPlayer = (currentPlayer + 1) % 2;
+        zobristKey ^= Zobrist.side();
         
         return true;
     }
     
+    /**
+     * Plays a move that can be taken back again with unmakeMove().
+     * This lets a search run on a single game state instead of copying it for every node.
+     * @param move The move to play
+     * @return Returns true if the move was legal and played, false otherwise.
+     */
+    public Boolean makeMove(IMove move)
+    {
+        if(!verifyMoveLegality(move))
+            return false;
+
+        UndoRecord record = undoStack[undoCount];
+        if(record == null)
+            record = undoStack[undoCount] = new UndoRecord();
+        record.save(move, this);
+        undoCount++;
+
+        updateBoard(move);
+        currentPlayer = (currentPlayer + 1) % 2;
+        zobristKey ^= Zobrist.side();
+
+        return true;
+    }
+
+    /**
+     * Takes back the last move played with makeMove(), restoring the cell,
+     * the macroboard, the move and round numbers, the current player and the game over state.
+     * @return Returns true if a move was taken back, false if there was nothing to undo.
+     */
+    public Boolean unmakeMove()
+    {
+        if(undoCount == 0)
+            return false;
+
+        undoStack[--undoCount].restore(this);
+        return true;
+    }
+
     /**
      * Non-User driven input, e.g. an update for playing a bot move.
      * @return Returns true if the update was successful, false otherwise.
@@ -126,13 +253,11 @@ public class GameManager {
         //Check if player is bot, if so, get bot input and update the state based on that.
         if(mode == GameMode.HumanVsBot && currentPlayer == 1 && playerGoesFirst)
         {
-             IMove botMove = bot.doMove(new GameState(currentState));
-             return updateGame(botMove);
+             return playBotMove(1, bot);
         }
         else if(mode == GameMode.HumanVsBot && !playerGoesFirst && currentPlayer == 0)
         {
-            IMove botMove = bot.doMove(new GameState(currentState));
-            return updateGame(botMove);
+            return playBotMove(0, bot);
         }
         
         //Check bot is not equal to null, and throw an exception if it is.
@@ -145,24 +270,194 @@ public class GameManager {
             assert(bot != null);
             assert(bot2 != null);
 
-            IMove botMove = currentPlayer == 0 ? bot.doMove(new GameState(currentState)) : bot2.doMove(new GameState(currentState));
-
-            return updateGame(botMove);
+            return currentPlayer == 0 ? playBotMove(0, bot) : playBotMove(1, bot2);
         }
         return false;
     }
 
 
 
+    private Boolean playBotMove(int player, IBot playerBot)
+    {
+        int timeoutsBefore = timeouts[player];
+        IMove move = askBot(player, playerBot);
+        // Interrupted while waiting for the bot: the game is being stopped, nothing is played
+        if(move == null && Thread.currentThread().isInterrupted())
+            return false;
+        Boolean valid = updateGame(move);
+        if(!valid && timeouts[player] == timeoutsBefore && moveStats[player] != null)
+            moveStats[player].recordInvalidMove();
+        return valid;
+    }
+
+    /**
+     * Gets a move from a bot, with a deadline if a timeout policy is set.
+     * @param player The bot's player, 0 or 1
+     * @param playerBot The bot
+     * @return The bot's move, a random move or null, see TimeoutPolicy
+     */
+    private IMove askBot(int player, IBot playerBot)
+    {
+        IGameState snapshot = snapshotFor(player);
+        MoveStats stats = moveStats[player];
+        if(timeoutPolicy == null)
+            return timedMove(playerBot, snapshot, stats);
+
+        // An abandoned call may still be inside doMove, and bots are not thread safe
+        BotCall previous = runningCalls[player];
+        if(previous != null && previous.isBusy())
+            return onTimeout(player);
+        if(ABANDONED_MOVES.get() >= MAX_ABANDONED_MOVES)
+            return onTimeout(player);
+
+        BotCall call = new BotCall(playerBot, snapshot, stats);
+        Future<IMove> move = BOT_EXECUTOR.submit(call);
+        runningCalls[player] = call;
+        try {
+            return move.get(currentState.getTimePerMove() + DEADLINE_GRACE_MS, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException ex) {
+            abandon(player, call, move);
+            return onTimeout(player);
+        }
+        catch (InterruptedException ex) {
+            // The game is being stopped (e.g. a cancelled tournament), that is not the bot's fault
+            Thread.currentThread().interrupt();
+            abandon(player, call, move);
+            return null;
+        }
+        catch (ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private void abandon(int player, BotCall call, Future<IMove> move)
+    {
+        call.abandon();
+        move.cancel(true);
+        // The bot may still be reading its snapshot, give it a new one next turn
+        botStates[player] = null;
+    }
+
+    private static IMove timedMove(IBot playerBot, IGameState snapshot, MoveStats stats)
+    {
+        long start = System.nanoTime();
+        IMove move = playerBot.doMove(snapshot);
+        if(stats != null)
+            stats.recordMove(System.nanoTime() - start);
+        return move;
+    }
+
+    /**
+     * A bot move run on BOT_EXECUTOR. It keeps ABANDONED_MOVES up to date: a call that is
+     * abandoned while it runs is counted until it returns, one abandoned before it starts never runs.
+     * A cancelled Future reports that it is done at once, so whether the bot is still in doMove
+     * is tracked here. Only a call that finishes before it is abandoned records its time in MoveStats.
+     */
+    private static final class BotCall implements Callable<IMove>
+    {
+        private static final int WAITING = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int ABANDONED = 3; // Abandoned while the bot is still in doMove
+        private static final int CANCELLED = 4; // Abandoned before it started, it never runs
+
+        private final IBot playerBot;
+        private final IGameState snapshot;
+        private final MoveStats stats;
+        private final AtomicInteger phase = new AtomicInteger(WAITING);
+
+        BotCall(IBot playerBot, IGameState snapshot, MoveStats stats)
+        {
+            this.playerBot = playerBot;
+            this.snapshot = snapshot;
+            this.stats = stats;
+        }
+
+        @Override
+        public IMove call()
+        {
+            if(!phase.compareAndSet(WAITING, RUNNING))
+                return null;
+            long start = System.nanoTime();
+            boolean returned = false;
+            try {
+                IMove move = playerBot.doMove(snapshot);
+                returned = true;
+                return move;
+            }
+            finally {
+                // Only a move that is still wanted is timed, an abandoned one was charged as a timeout
+                if(phase.compareAndSet(RUNNING, DONE)) {
+                    if(returned && stats != null)
+                        stats.recordMove(System.nanoTime() - start);
+                }
+                else {
+                    phase.set(DONE);
+                    ABANDONED_MOVES.decrementAndGet();
+                }
+            }
+        }
+
+        void abandon()
+        {
+            if(phase.compareAndSet(RUNNING, ABANDONED))
+                ABANDONED_MOVES.incrementAndGet();
+            else
+                phase.compareAndSet(WAITING, CANCELLED);
+        }
+
+        /**
+         * @return Returns true while the bot is still in doMove for this call
+         */
+        boolean isBusy()
+        {
+            int now = phase.get();
+            return now == RUNNING || now == ABANDONED;
+        }
+    }
+
+    private IMove onTimeout(int player)
+    {
+        timeouts[player]++;
+        if(moveStats[player] != null)
+            moveStats[player].recordTimeout();
+        if(timeoutPolicy == TimeoutPolicy.Forfeit)
+            return null;
+        List<IMove> moves = currentState.getField().getAvailableMoves();
+        return moves.isEmpty() ? null : moves.get(ThreadLocalRandom.current().nextInt(moves.size()));
+    }
+
+    /**
+     * Copies the current state into the player's snapshot buffer.
+     * Every bot gets its own buffer, which is overwritten on its next turn, so a bot
+     * can't change the live game but also shouldn't keep the state between turns.
+     * @param player The player the snapshot is for, 0 or 1
+     * @return The snapshot
+     */
+    private IGameState snapshotFor(int player)
+    {
+        GameState snapshot = botStates[player];
+        if(snapshot == null)
+            botStates[player] = snapshot = new GameState(currentState);
+        else
+            snapshot.copyFrom(currentState);
+        return snapshot;
+    }
+
     private Boolean verifyMoveLegality(IMove move)
     {
+        if(move == null)
+            return false;
         IField field = currentState.getField();
         boolean isValid=field.isInActiveMicroboard(move.getX(), move.getY());
 
         if(isValid && (move.getX() < 0 || 9 <= move.getX())) isValid = false;
         if(isValid && (move.getY() < 0 || 9 <= move.getY())) isValid = false;
 
-        if(isValid && !field.getBoard()[move.getX()][move.getY()].equals(IField.EMPTY_FIELD))
+        if(isValid && !field.getPlayerId(move.getX(), move.getY()).equals(IField.EMPTY_FIELD))
             isValid=false;
 
         return isValid;
@@ -170,49 +465,66 @@ public class GameManager {
     
     private void updateBoard(IMove move)
     {
-        String[][] board = currentState.getField().getBoard();
-        board[move.getX()][move.getY()]=currentPlayer+"";
+        zobristKey ^= Zobrist.active(availableMicroboards());
+        currentState.getField().setPlayerId(move.getX(), move.getY(), currentPlayer+"");
+        zobristKey ^= Zobrist.cell(currentPlayer, move.getIndex());
         currentState.setMoveNumber(currentState.getMoveNumber() + 1);
         if(currentState.getMoveNumber() % 2 == 0) { currentState.setRoundNumber(currentState.getRoundNumber() + 1); }
         checkAndUpdateIfWin(move);
         updateMacroboard(move);
+        zobristKey ^= Zobrist.active(availableMicroboards());
 
     }
 
     private void checkAndUpdateIfWin(IMove move) {
-        String[][] macroBoard = currentState.getField().getMacroboard();
+        IField field = currentState.getField();
+        String[][] macroBoard = field.getMacroboard();
         int macroX = move.getX()/3;
         int macroY = move.getY()/3;
 
         if(macroBoard[macroX][macroY].equals(IField.EMPTY_FIELD) ||
                 macroBoard[macroX][macroY].equals(IField.AVAILABLE_FIELD) ) {
 
-            String[][] board = getCurrentState().getField().getBoard();
+            int microboard = macroX*3 + macroY;
+            int playerMask = field.getMicroboardMask(currentPlayer, microboard);
+            int occupied = playerMask | field.getMicroboardMask(1 - currentPlayer, microboard);
+
+            if(WinLines.isWin(playerMask)) {
+                field.setMacroboardId(macroX, macroY, currentPlayer + "");
+                zobristKey ^= Zobrist.microboard(currentPlayer == 0 ? Zobrist.STATUS_WON_0 : Zobrist.STATUS_WON_1, microboard);
+            }
+            else if(WinLines.isFull(occupied)) {
+                field.setMacroboardId(macroX, macroY, "TIE");
+                zobristKey ^= Zobrist.microboard(Zobrist.STATUS_TIE, microboard);
+            }
+            else
+                return; // Macroboard did not change, so the game can't have ended
 
-            if(isWin(board,move, ""+currentPlayer))
-                macroBoard[macroX][macroY] = currentPlayer + "";
-            else if(isTie(board,move))
-                macroBoard[macroX][macroY] = "TIE";
-            
             //Check macro win
-            if(isWin(macroBoard,new Move(macroX,macroY), ""+currentPlayer))
+            if(WinLines.isWin(field.getMacroboardMask(currentPlayer)))
                 gameOver = GameOverState.Win;
-            else if(isTie(macroBoard,new Move(macroX,macroY)))
+            else if(isTie(macroBoard))
                 gameOver = GameOverState.Tie;
         }
 
     }
 
-    private boolean isTie(String[][] board, IMove move){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
+    private int availableMicroboards() {
+        String[][] macroBoard = currentState.getField().getMacroboard();
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if(macroBoard[i][k].equals(IField.AVAILABLE_FIELD))
+                    mask |= 1 << (i*3 + k);
+            }
+        return mask;
+    }
 
-        for (int i = startX; i < startX+3; i++) {
-            for (int k = startY; k < startY+3; k++) {
-                if(board[i][k].equals(IField.AVAILABLE_FIELD) ||
-                        board[i][k].equals(IField.EMPTY_FIELD) )
+    private boolean isTie(String[][] macroBoard){
+        for (int i = 0; i < 3; i++) {
+            for (int k = 0; k < 3; k++) {
+                if(macroBoard[i][k].equals(IField.AVAILABLE_FIELD) ||
+                        macroBoard[i][k].equals(IField.EMPTY_FIELD) )
                     return false;
             }
         }
@@ -221,69 +533,76 @@ public class GameManager {
 
 
     public static boolean isWin(String[][] board, IMove move, String currentPlayer){
-        int localX = move.getX() % 3;
-        int localY = move.getY() % 3;
-        int startX = move.getX() - (localX);
-        int startY = move.getY() - (localY);
-
-        //check col
-        for (int i = startY; i < startY + 3; i++) {
-            if (!board[move.getX()][i].equals(currentPlayer))
-                break;
-            if (i == startY + 3 - 1) return true;
-        }
-
-        //check row
-        for (int i = startX; i < startX + 3; i++) {
-            if (!board[i][move.getY()].equals(currentPlayer))
-                break;
-            if (i == startX + 3 - 1) return true;
-        }
-
-        //check diagonal
-        if (localX == localY) {
-            //we're on a diagonal
-            int y = startY;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][y++].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
-        }
-
-        //check anti diagonal
-        if (localX + localY == 3 - 1) {
-            int less = 0;
-            for (int i = startX; i < startX + 3; i++) {
-                if (!board[i][(startY + 2)-less++].equals(currentPlayer))
-                    break;
-                if (i == startX + 3 - 1) return true;
-            }
-        }
-        return false;
+        return WinLines.isWin(board, move, currentPlayer);
     }
     
     private void updateMacroboard(IMove move)
     {
-        String[][] macroBoard = currentState.getField().getMacroboard();
+        IField field = currentState.getField();
+        String[][] macroBoard = field.getMacroboard();
         for (int i = 0; i < macroBoard.length; i++)
             for (int k = 0; k < macroBoard[i].length; k++) {
                 if(macroBoard[i][k].equals(IField.AVAILABLE_FIELD))
-                    macroBoard[i][k] = IField.EMPTY_FIELD;
+                    field.setMacroboardId(i, k, IField.EMPTY_FIELD);
             }
 
         int xTrans = move.getX()%3;
         int yTrans = move.getY()%3;
 
         if(macroBoard[xTrans][yTrans].equals(IField.EMPTY_FIELD))
-            macroBoard[xTrans][yTrans] = IField.AVAILABLE_FIELD;
+            field.setMacroboardId(xTrans, yTrans, IField.AVAILABLE_FIELD);
         else {
             // Field is already won, set all fields not won to avail.
             for (int i = 0; i < macroBoard.length; i++)
                 for (int k = 0; k < macroBoard[i].length; k++) {
                     if(macroBoard[i][k].equals(IField.EMPTY_FIELD))
-                        macroBoard[i][k] = IField.AVAILABLE_FIELD;
+                        field.setMacroboardId(i, k, IField.AVAILABLE_FIELD);
                 }
         }
     }
+
+    /**
+     * Everything updateBoard() can change, so a move can be taken back without copying the state.
+     */
+    private static class UndoRecord {
+        private int x;
+        private int y;
+        private final String[] macroboard = new String[9];
+        private int moveNumber;
+        private int roundNumber;
+        private int currentPlayer;
+        private GameOverState gameOver;
+        private long zobristKey;
+
+        private void save(IMove move, GameManager game) {
+            IGameState state = game.currentState;
+            String[][] macro = state.getField().getMacroboard();
+            for (int i = 0; i < 3; i++)
+                for (int k = 0; k < 3; k++)
+                    macroboard[i*3 + k] = macro[i][k];
+            x = move.getX();
+            y = move.getY();
+            moveNumber = state.getMoveNumber();
+            roundNumber = state.getRoundNumber();
+            currentPlayer = game.currentPlayer;
+            gameOver = game.gameOver;
+            zobristKey = game.zobristKey;
+        }
+
+        private void restore(GameManager game) {
+            IGameState state = game.currentState;
+            IField field = state.getField();
+            String[][] macro = field.getMacroboard();
+            field.setPlayerId(x, y, IField.EMPTY_FIELD);
+            for (int i = 0; i < 3; i++)
+                for (int k = 0; k < 3; k++)
+                    if(!macro[i][k].equals(macroboard[i*3 + k]))
+                        field.setMacroboardId(i, k, macroboard[i*3 + k]);
+            state.setMoveNumber(moveNumber);
+            state.setRoundNumber(roundNumber);
+            game.currentPlayer = currentPlayer;
+            game.gameOver = gameOver;
+            game.zobristKey = zobristKey;
+        }
+    }
 }
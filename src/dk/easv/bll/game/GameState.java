@@ -15,13 +15,34 @@ public class GameState implements IGameState{
         roundNumber=0;
     }
 
+    /**
+     * Creates an empty game on the given field, e.g. a BitboardField for fast simulations.
+     * @param field The field to play on
+     */
+    public GameState(IField field){
+        this.field = field;
+        field.clearBoard();
+        moveNumber=0;
+        roundNumber=0;
+    }
+
     public GameState(IGameState state) {
         field = new Field();
+        copyFrom(state);
+    }
+
+    /**
+     * Overwrites this state with a copy of another one, reusing this state's field.
+     * Used to hand bots a fresh snapshot every turn without allocating a new GameState.
+     * @param state The state to copy
+     */
+    public void copyFrom(IGameState state) {
         field.setMacroboard(state.getField().getMacroboard());
         field.setBoard(state.getField().getBoard());
 
         moveNumber = state.getMoveNumber();
         roundNumber = state.getRoundNumber();
+        timePerMove = state.getTimePerMove();
     }
 
     @Override
@@ -0,0 +1,254 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.Field;
+import dk.easv.bll.field.IField;
+
+import java.util.Arrays;
+
+/**
+ * A position packed into two longs, for transposition tables, opening books, replay files
+ * and sending positions over the network.
+ *
+ * 2 bits per cell would need 162 bits, and even base 3 does not fit in 128 (3^81 > 2^128).
+ * The encoding is therefore canonical instead of exact: a microboard that is still open is
+ * stored with all its cells, but a decided microboard only stores who won it (or that it
+ * was a tie), since the cells inside it can't change the rest of the game.
+ * An open microboard has 11093 possible layouts, so with the 3 outcomes every microboard
+ * fits in a number below 11096. Two of those fit in 27 bits, and the last microboard, the
+ * active microboard (one board or any, see Zobrist.activeIndex) and the side to move
+ * fit in 18 bits, 126 bits in total.
+ *
+ * Positions that only differ inside decided microboards get the same encoding.
+ * Decoding gives a representative layout for those boards, and a move number that
+ * matches the pieces on the board and the side to move.
+ */
+public final class PackedState implements Comparable<PackedState> {
+
+    private static final int WON_0;
+    private static final int WON_1;
+    private static final int TIE;
+    private static final int CODES;
+
+    private static final int PAIR_BITS = 27;
+    private static final long PAIR_MASK = (1L << PAIR_BITS) - 1;
+
+    // Base 3 number of an open layout -> code, and code -> the two players' masks
+    private static final short[] CODE_OF = new short[19683];
+    private static final int[] LAYOUT_0;
+    private static final int[] LAYOUT_1;
+
+    private static final int[] POW3 = {1, 3, 9, 27, 81, 243, 729, 2187, 6561};
+
+    // Representative layouts for decided microboards
+    private static final int WIN_LINE = 0b000_000_111;
+    private static final int TIE_0 = 0b110_001_101;
+    private static final int TIE_1 = 0b001_110_010;
+
+    static {
+        int count = 0;
+        int[] layout0 = new int[19683];
+        int[] layout1 = new int[19683];
+        for (int ternary = 0; ternary < 19683; ternary++) {
+            int mask0 = 0;
+            int mask1 = 0;
+            for (int position = 0, rest = ternary; position < 9; position++, rest /= 3) {
+                if (rest % 3 == 1)
+                    mask0 |= 1 << position;
+                else if (rest % 3 == 2)
+                    mask1 |= 1 << position;
+            }
+            if (WinLines.isWin(mask0) || WinLines.isWin(mask1) || WinLines.isFull(mask0 | mask1)) {
+                CODE_OF[ternary] = -1;
+                continue;
+            }
+            CODE_OF[ternary] = (short) count;
+            layout0[count] = mask0;
+            layout1[count] = mask1;
+            count++;
+        }
+        WON_0 = count;
+        WON_1 = count + 1;
+        TIE = count + 2;
+        CODES = count + 3;
+        LAYOUT_0 = Arrays.copyOf(layout0, CODES);
+        LAYOUT_1 = Arrays.copyOf(layout1, CODES);
+        LAYOUT_0[WON_0] = WIN_LINE;
+        LAYOUT_1[WON_1] = WIN_LINE;
+        LAYOUT_0[TIE] = TIE_0;
+        LAYOUT_1[TIE] = TIE_1;
+    }
+
+    private final long high;
+    private final long low;
+
+    public PackedState(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * Packs a state, with the player to move taken from the move number.
+     * @param state The state to pack
+     * @return The packed state
+     */
+    public static PackedState encode(IGameState state) {
+        IField field = state.getField();
+        int[] masks = new int[18];
+        for (int board = 0; board < 9; board++) {
+            masks[board] = field.getMicroboardMask(0, board);
+            masks[9 + board] = field.getMicroboardMask(1, board);
+        }
+
+        String[][] macroboard = field.getMacroboard();
+        int activeMask = 0;
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++) {
+                if (macroboard[x][y].equals(IField.AVAILABLE_FIELD))
+                    activeMask |= 1 << (x * 3 + y);
+            }
+        return encode(masks, activeMask, state.getMoveNumber() % 2);
+    }
+
+    /**
+     * Packs a position given as bit masks, see WinLines for the layout.
+     * @param masks The cells of each player, indexed player*9 + microboard
+     * @param activeMask 9 bit mask of the microboards that may be played in
+     * @param playerToMove 0 or 1
+     * @return The packed state
+     */
+    public static PackedState encode(int[] masks, int activeMask, int playerToMove) {
+        int[] codes = new int[9];
+        for (int board = 0; board < 9; board++)
+            codes[board] = codeOf(masks[board], masks[9 + board]);
+
+        long last = (codes[8] * 10L + Zobrist.activeIndex(activeMask)) * 2 + playerToMove;
+        long pair0 = pair(codes, 0);
+        long pair1 = pair(codes, 2);
+        long pair2 = pair(codes, 4);
+        long pair3 = pair(codes, 6);
+
+        long low = pair0 | pair1 << PAIR_BITS | pair2 << (2 * PAIR_BITS);
+        long high = pair2 >>> (64 - 2 * PAIR_BITS) | pair3 << (3 * PAIR_BITS - 64) | last << (4 * PAIR_BITS - 64);
+        return new PackedState(high, low);
+    }
+
+    /**
+     * Unpacks into a new GameState. Decided microboards get a representative layout,
+     * see the class description.
+     * @return A new GameState
+     */
+    public IGameState toGameState() {
+        long pair2 = (low >>> (2 * PAIR_BITS) | high << (64 - 2 * PAIR_BITS)) & PAIR_MASK;
+        long last = high >>> (4 * PAIR_BITS - 64);
+        int playerToMove = (int) (last % 2);
+        int activeIndex = (int) (last / 2 % 10);
+
+        int[] codes = new int[9];
+        unpair(low & PAIR_MASK, codes, 0);
+        unpair(low >>> PAIR_BITS & PAIR_MASK, codes, 2);
+        unpair(pair2, codes, 4);
+        unpair(high >>> (3 * PAIR_BITS - 64) & PAIR_MASK, codes, 6);
+        codes[8] = (int) (last / 20);
+
+        GameState state = new GameState(new Field());
+        IField field = state.getField();
+        int pieces = 0;
+        for (int board = 0; board < 9; board++) {
+            int code = codes[board];
+            if (code >= CODES)
+                throw new IllegalArgumentException("Not a packed state: " + this);
+            int x = (board / 3) * 3;
+            int y = (board % 3) * 3;
+            for (int position = 0; position < 9; position++) {
+                int bit = 1 << position;
+                if ((LAYOUT_0[code] & bit) != 0)
+                    field.setPlayerId(x + position / 3, y + position % 3, "0");
+                else if ((LAYOUT_1[code] & bit) != 0)
+                    field.setPlayerId(x + position / 3, y + position % 3, "1");
+            }
+            pieces += Integer.bitCount(LAYOUT_0[code] | LAYOUT_1[code]);
+
+            String id;
+            if (code == WON_0)
+                id = "0";
+            else if (code == WON_1)
+                id = "1";
+            else if (code == TIE)
+                id = "TIE";
+            else if (activeIndex == board || activeIndex == Zobrist.ANY_MICROBOARD)
+                id = IField.AVAILABLE_FIELD;
+            else
+                id = IField.EMPTY_FIELD;
+            field.setMacroboardId(board / 3, board % 3, id);
+        }
+
+        int moveNumber = pieces % 2 == playerToMove ? pieces : pieces + 1;
+        state.setMoveNumber(moveNumber);
+        state.setRoundNumber(moveNumber / 2);
+        return state;
+    }
+
+    private static int codeOf(int mask0, int mask1) {
+        if (WinLines.isWin(mask0))
+            return WON_0;
+        if (WinLines.isWin(mask1))
+            return WON_1;
+        if (WinLines.isFull(mask0 | mask1))
+            return TIE;
+        int ternary = 0;
+        for (int position = 0; position < 9; position++) {
+            if ((mask0 & (1 << position)) != 0)
+                ternary += POW3[position];
+            else if ((mask1 & (1 << position)) != 0)
+                ternary += 2 * POW3[position];
+        }
+        return CODE_OF[ternary];
+    }
+
+    private static long pair(int[] codes, int first) {
+        return codes[first] * (long) CODES + codes[first + 1];
+    }
+
+    private static void unpair(long pair, int[] codes, int first) {
+        codes[first] = (int) (pair / CODES);
+        codes[first + 1] = (int) (pair % CODES);
+    }
+
+    /**
+     * Orders by the two longs as one unsigned 128 bit number, high first.
+     * OpeningBook files are sorted in this order.
+     */
+    @Override
+    public int compareTo(PackedState other) {
+        int compare = Long.compareUnsigned(high, other.high);
+        return compare != 0 ? compare : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof PackedState))
+            return false;
+        PackedState other = (PackedState) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high * 31 + low);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
@@ -0,0 +1,99 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.move.IMove;
+
+/**
+ * Win detection for a single 3x3 board (a microboard or the macroboard) using
+ * precomputed lookup tables.
+ * A 3x3 board is described by a 9 bit mask per player, where bit (x%3)*3+(y%3)
+ * is set when the player owns the cell at (x,y). This is the same layout as
+ * BitboardField uses, so its masks can be looked up directly.
+ */
+public final class WinLines {
+
+    public static final int FULL_MASK = 0x1FF;
+
+    /**
+     * The 8 winning lines: 3 columns, 3 rows and the 2 diagonals.
+     */
+    public static final int[] LINES = {
+            0b000_000_111, 0b000_111_000, 0b111_000_000,
+            0b001_001_001, 0b010_010_010, 0b100_100_100,
+            0b100_010_001, 0b001_010_100};
+
+    private static final boolean[] WINS = new boolean[512];
+    private static final byte[] LINE_COUNTS = new byte[512];
+
+    static {
+        for (int mask = 0; mask < WINS.length; mask++) {
+            for (int line : LINES) {
+                if ((mask & line) == line) {
+                    WINS[mask] = true;
+                    LINE_COUNTS[mask]++;
+                }
+            }
+        }
+    }
+
+    private WinLines() {
+    }
+
+    /**
+     * @param mask 9 bit mask of the cells owned by a player
+     * @return Returns true if the cells contain a winning line
+     */
+    public static boolean isWin(int mask) {
+        return WINS[mask];
+    }
+
+    /**
+     * @param mask 9 bit mask of the cells owned by a player
+     * @return The number of complete lines in the cells, 0-8
+     */
+    public static int countLines(int mask) {
+        return LINE_COUNTS[mask];
+    }
+
+    /**
+     * @param occupied 9 bit mask of the occupied cells
+     * @return Returns true if no cell is left
+     */
+    public static boolean isFull(int occupied) {
+        return occupied == FULL_MASK;
+    }
+
+    public static int cellBit(int x, int y) {
+        return 1 << ((x % 3) * 3 + (y % 3));
+    }
+
+    /**
+     * Builds the mask of cells owned by a player in the 3x3 area starting at (startX, startY).
+     * @param board The board, either the 9x9 board or the 3x3 macroboard
+     * @param startX Top left column of the area
+     * @param startY Top left row of the area
+     * @param player The player id
+     * @return 9 bit mask
+     */
+    public static int maskOf(String[][] board, int startX, int startY, String player) {
+        int mask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                if (board[startX + i][startY + k].equals(player))
+                    mask |= 1 << (i * 3 + k);
+            }
+        return mask;
+    }
+
+    /**
+     * Checks whether the player has a winning line in the 3x3 area containing the move.
+     * @param board The board, either the 9x9 board or the 3x3 macroboard
+     * @param move The last move, used to find the 3x3 area
+     * @param player The player id
+     * @return Returns true if the player has won the area
+     */
+    public static boolean isWin(String[][] board, IMove move, String player) {
+        int startX = move.getX() - move.getX() % 3;
+        int startY = move.getY() - move.getY() % 3;
+        return WINS[maskOf(board, startX, startY, player)];
+    }
+}
@@ -0,0 +1,136 @@
+package dk.easv.bll.game;
+
+import dk.easv.bll.field.IField;
+
+import java.util.SplittableRandom;
+
+/**
+ * 64 bit Zobrist keys for Ultimate Tic-Tac-Toe positions, for transposition tables and evaluation caches.
+ * A key is the XOR of one random number per feature of the position:
+ * every occupied cell, the status of every decided microboard, the active microboard(s)
+ * and the player to move. GameManager and GameSimulator keep their key up to date
+ * as moves are played, so it never has to be computed from scratch during a search.
+ *
+ * The numbers come from a fixed seed, so keys are the same in every run.
+ */
+public final class Zobrist {
+
+    public static final int STATUS_WON_0 = 0;
+    public static final int STATUS_WON_1 = 1;
+    public static final int STATUS_TIE = 2;
+
+    /**
+     * Active index used when the player may choose between several microboards.
+     */
+    public static final int ANY_MICROBOARD = 9;
+
+    private static final long[] CELLS = new long[2 * 81];
+    private static final long[] MICROBOARDS = new long[3 * 9];
+    private static final long[] ACTIVE = new long[10];
+    private static final long SIDE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x9E3779B97F4A7C15L);
+        for (int i = 0; i < CELLS.length; i++)
+            CELLS[i] = random.nextLong();
+        for (int i = 0; i < MICROBOARDS.length; i++)
+            MICROBOARDS[i] = random.nextLong();
+        for (int i = 0; i < ACTIVE.length; i++)
+            ACTIVE[i] = random.nextLong();
+        SIDE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param move Cell index, x*9+y
+     * @return Key for the player owning the cell
+     */
+    public static long cell(int player, int move) {
+        return CELLS[player * 81 + move];
+    }
+
+    /**
+     * @param status STATUS_WON_0, STATUS_WON_1 or STATUS_TIE
+     * @param microboard Microboard index, (x/3)*3+(y/3)
+     * @return Key for a decided microboard
+     */
+    public static long microboard(int status, int microboard) {
+        return MICROBOARDS[status * 9 + microboard];
+    }
+
+    /**
+     * @param activeMask 9 bit mask of the microboards that may be played in
+     * @return Key for the active microboard(s)
+     */
+    public static long active(int activeMask) {
+        return ACTIVE[activeIndex(activeMask)];
+    }
+
+    /**
+     * @param activeMask 9 bit mask of the microboards that may be played in
+     * @return The single active microboard, or ANY_MICROBOARD
+     */
+    public static int activeIndex(int activeMask) {
+        return Integer.bitCount(activeMask) == 1 ? Integer.numberOfTrailingZeros(activeMask) : ANY_MICROBOARD;
+    }
+
+    /**
+     * @return Key XORed in when player 1 is to move
+     */
+    public static long side() {
+        return SIDE;
+    }
+
+    /**
+     * Computes the key of a state from scratch, with the player to move taken from the move number.
+     * @param state The state
+     * @return 64 bit key
+     */
+    public static long hash(IGameState state) {
+        return hash(state.getField(), state.getMoveNumber() % 2);
+    }
+
+    /**
+     * Computes the key of a field from scratch.
+     * @param field The field
+     * @param playerToMove 0 or 1
+     * @return 64 bit key
+     */
+    public static long hash(IField field, int playerToMove) {
+        long key = 0;
+        for (int board = 0; board < 9; board++) {
+            int x = (board / 3) * 3;
+            int y = (board % 3) * 3;
+            for (int player = 0; player < 2; player++) {
+                int mask = field.getMicroboardMask(player, board);
+                for (; mask != 0; mask &= mask - 1) {
+                    int position = Integer.numberOfTrailingZeros(mask);
+                    key ^= cell(player, (x + position / 3) * 9 + y + position % 3);
+                }
+            }
+        }
+
+        String[][] macroboard = field.getMacroboard();
+        int activeMask = 0;
+        for (int i = 0; i < 3; i++)
+            for (int k = 0; k < 3; k++) {
+                String id = macroboard[i][k];
+                if (id.equals(IField.AVAILABLE_FIELD))
+                    activeMask |= 1 << (i * 3 + k);
+                else if (id.equals("0"))
+                    key ^= microboard(STATUS_WON_0, i * 3 + k);
+                else if (id.equals("1"))
+                    key ^= microboard(STATUS_WON_1, i * 3 + k);
+                else if (!id.equals(IField.EMPTY_FIELD))
+                    key ^= microboard(STATUS_TIE, i * 3 + k);
+            }
+        key ^= active(activeMask);
+
+        if (playerToMove == 1)
+            key ^= SIDE;
+        return key;
+    }
+}
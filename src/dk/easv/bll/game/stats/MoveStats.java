@@ -0,0 +1,122 @@
+package dk.easv.bll.game.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How long a bot takes to move, plus its timeouts and invalid moves.
+ *
+ * Move times go into a histogram with log-linear buckets, like HdrHistogram:
+ * every power of two is split into 32 buckets, so percentiles are within about 3%
+ * of the real value while the histogram has a fixed size. Recording is lock free,
+ * so one MoveStats can be shared by all the threads playing the same bot.
+ */
+public class MoveStats {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String botName;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder invalidMoves = new LongAdder();
+
+    public MoveStats(String botName) {
+        this.botName = botName;
+    }
+
+    public String getBotName() {
+        return botName;
+    }
+
+    /**
+     * @param nanos The time the bot took to return a move
+     */
+    public void recordMove(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+        moves.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public void recordTimeout() {
+        timeouts.increment();
+    }
+
+    public void recordInvalidMove() {
+        invalidMoves.increment();
+    }
+
+    /**
+     * @return The number of moves with a recorded time
+     */
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getInvalidMoves() {
+        return invalidMoves.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long count = moves.sum();
+        return count == 0 ? 0 : (double) totalNanos.sum() / count;
+    }
+
+    /**
+     * @param percentile 0-100, e.g. 50 for the median or 99
+     * @return The move time at the percentile, rounded to its histogram bucket
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = moves.sum();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return Math.min(valueOf(i), getMaxNanos());
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * @return E.g. "HyggeBot: 1203 moves, mean 812.412 ms, p50 979.003 ms, p99 981.327 ms, max 990.215 ms, 0 timeouts, 0 invalid"
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %d moves, mean %.3f ms, p50 %.3f ms, p99 %.3f ms, max %.3f ms, %d timeouts, %d invalid",
+                botName, getMoves(), getMeanNanos() / 1e6, getPercentileNanos(50) / 1e6,
+                getPercentileNanos(99) / 1e6, getMaxNanos() / 1e6, getTimeouts(), getInvalidMoves());
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // The highest value in the bucket
+    private static long valueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+}
@@ -9,5 +9,12 @@ public interface IMove {
     int getX();
 
     int getY();
+
+    /**
+     * @return The cell index of the move, x*9+y
+     */
+    default int getIndex() {
+        return getX() * 9 + getY();
+    }
     
 }
@@ -1,22 +1,46 @@
 package dk.easv.bll.move;
 
-import java.util.Objects;
-
+/**
+ * An immutable move. There are only 81 cells, so all moves are created once
+ * and shared, use Move.of(x, y) or Move.ofIndex(index) instead of new Move(x, y).
+ */
 public class Move implements IMove{
-    int x=0;
-    int y=0;
+    private static final Move[] MOVES = new Move[81];
+
+    static {
+        for (int i = 0; i < MOVES.length; i++)
+            MOVES[i] = new Move(i / 9, i % 9);
+    }
+
+    private final int x;
+    private final int y;
 
     public Move(int x, int y) {
         this.x=x;
         this.y=y;
     }
 
-    public void setY(int y){
-        this.y=y;
+    /**
+     * @param x Column (0-8)
+     * @param y Row (0-8)
+     * @return The shared move for (x,y)
+     * @throws IllegalArgumentException If x or y is outside 0-8
+     */
+    public static Move of(int x, int y) {
+        if (x < 0 || x > 8 || y < 0 || y > 8)
+            throw new IllegalArgumentException("Move (" + x + "," + y + ") is outside the board");
+        return MOVES[x * 9 + y];
     }
 
-    public void setX(int x){
-        this.x=x;
+    /**
+     * @param index Move index, x*9+y
+     * @return The shared move for the index
+     * @throws IllegalArgumentException If the index is outside 0-80
+     */
+    public static Move ofIndex(int index) {
+        if (index < 0 || index >= MOVES.length)
+            throw new IllegalArgumentException("Move index " + index + " is outside the board");
+        return MOVES[index];
     }
 
     @Override
@@ -29,6 +53,11 @@ public class Move implements IMove{
         return y;
     }
 
+    @Override
+    public int getIndex() {
+        return x * 9 + y;
+    }
+
     @Override
     public String toString() {
         return "("+x+","+y+")";
@@ -44,6 +73,6 @@ public class Move implements IMove{
 
     @Override
     public int hashCode() {
-        return Objects.hash(x, y);
+        return x * 9 + y;
     }
 }
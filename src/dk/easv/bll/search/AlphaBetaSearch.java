@@ -0,0 +1,364 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.simulator.GameSimulator;
+import dk.easv.bll.simulator.Symmetry;
+
+import java.util.Arrays;
+
+/**
+ * Iterative deepening negamax with alpha-beta pruning.
+ *
+ * The search goes one ply deeper at a time until the deadline and returns the best move of
+ * the last depth it finished, a depth that runs out of time is thrown away. Moves are tried in
+ * this order: the best move from the transposition table (for the principal variation that
+ * is the move found by the previous depth), the two killer moves of the ply, and then by
+ * history score.
+ *
+ * Leaves are scored by a ThreatEvaluator that follows the moves of the search.
+ * Positions with fewer than getSymmetryPlies() moves are keyed in the transposition table on
+ * their canonical orientation under all 8 symmetries (see Symmetry), so mirrored lines share
+ * their entries. Table moves are stored in that orientation.
+ * Scores are from the view of the player to move. A won game is WIN minus the number of
+ * plies to get there, so faster wins score higher.
+ *
+ * A search is not thread safe.
+ */
+public class AlphaBetaSearch {
+    public static final int WIN = 1_000_000;
+    public static final int DEFAULT_TABLE_BITS = 20;
+    public static final int DEFAULT_SYMMETRY_PLIES = 8;
+
+    private static final int INFINITY = WIN + 1;
+    private static final int MAX_PLY = 82;
+    private static final int WIN_BOUND = WIN - MAX_PLY; // Scores above this are wins
+    // Nodes between looking at the clock
+    private static final int CLOCK_INTERVAL = 1023;
+
+    private static final int TT_MOVE_ORDER = 1 << 30;
+    private static final int KILLER_ORDER = 1 << 29;
+    private static final int HISTORY_LIMIT = 1 << 27;
+
+    private final GameSimulator simulator = new GameSimulator();
+    private final ThreatEvaluator evaluator = new ThreatEvaluator();
+    private final TranspositionTable table;
+    private final int[][] moves = new int[MAX_PLY][81];
+    private final int[][] order = new int[MAX_PLY][81];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[2][81];
+
+    private long deadline;
+    private long nodes;
+    private boolean aborted;
+    private int completedDepth;
+    private int rootMoveTriedFirst;
+    private int score;
+    private int symmetryPlies = DEFAULT_SYMMETRY_PLIES;
+
+    public AlphaBetaSearch() {
+        this(new TranspositionTable(DEFAULT_TABLE_BITS));
+    }
+
+    public AlphaBetaSearch(TranspositionTable table) {
+        this.table = table;
+    }
+
+    /**
+     * @param position The position to search, it is copied
+     * @param deadlineNanos System.nanoTime() to stop at
+     * @return The best move as a cell index, or -1 if the game is over
+     */
+    public int search(GameSimulator position, long deadlineNanos) {
+        return search(position, deadlineNanos, deadlineNanos);
+    }
+
+    /**
+     * Like search(GameSimulator, long), but no new depth is started after the soft deadline.
+     * @param position The position to search, it is copied
+     * @param softDeadlineNanos System.nanoTime() after which no new depth is started, see TimeManager
+     * @param hardDeadlineNanos System.nanoTime() to stop at
+     * @return The best move as a cell index, or -1 if the game is over
+     */
+    public int search(GameSimulator position, long softDeadlineNanos, long hardDeadlineNanos) {
+        simulator.copyFrom(position);
+        evaluator.load(simulator);
+        deadline = hardDeadlineNanos;
+        nodes = 0;
+        aborted = false;
+        completedDepth = 0;
+        score = 0;
+        table.newSearch();
+        for (int[] killer : killers) {
+            killer[0] = TranspositionTable.NO_MOVE;
+            killer[1] = TranspositionTable.NO_MOVE;
+        }
+        // Keep what the history learnt on the last move, but let the new search count more
+        for (int[] playerHistory : history)
+            for (int i = 0; i < playerHistory.length; i++)
+                playerHistory[i] >>= 2;
+
+        if (simulator.getGameOver() != GameOverState.Active)
+            return -1;
+        int best = -1;
+        int firstMove = -1;
+        int maxDepth = 81 - simulator.getMoveNumber();
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int move = searchRoot(depth);
+            if (firstMove < 0)
+                firstMove = rootMoveTriedFirst;
+            if (aborted)
+                break;
+            best = move;
+            completedDepth = depth;
+            // Nothing to gain from going deeper once the game is solved
+            if (Math.abs(score) > WIN_BOUND || System.nanoTime() >= softDeadlineNanos)
+                break;
+        }
+        // Not even depth 1 finished, any legal move is better than none
+        return best >= 0 ? best : firstMove;
+    }
+
+    /**
+     * Canonicalising a position costs about as much as a few moves, and mirrored positions get
+     * rare as the game goes on, so it is only done early in the game. With the default of 8,
+     * a 400 ms search from the empty board gets two plies deeper (11 instead of 9); from move 10
+     * on the cost is larger than the gain.
+     * @param symmetryPlies Positions with fewer moves than this are canonicalised, 0 turns it off
+     */
+    public AlphaBetaSearch setSymmetryPlies(int symmetryPlies) {
+        this.symmetryPlies = symmetryPlies;
+        return this;
+    }
+
+    public int getSymmetryPlies() {
+        return symmetryPlies;
+    }
+
+    /**
+     * @return The last depth that was searched to the end
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return The score of the last completed depth, from the view of the player to move
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return The number of positions visited in the last search
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Follows the best moves in the transposition table from the root of the last search.
+     * @return The moves as cell indexes, empty if nothing is known
+     */
+    public int[] getPrincipalVariation() {
+        int[] line = new int[MAX_PLY];
+        int length = 0;
+        GameSimulator walk = simulator.copy();
+        while (length < completedDepth && walk.getGameOver() == GameOverState.Active) {
+            int orientation = orientation(walk);
+            long entry = table.probe(tableKey(walk, orientation));
+            int move = entry == 0 ? TranspositionTable.NO_MOVE : fromTableMove(TranspositionTable.move(entry), orientation);
+            if (move == TranspositionTable.NO_MOVE || !walk.isLegal(move))
+                break;
+            walk.apply(move);
+            line[length++] = move;
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    private int searchRoot(int depth) {
+        int orientation = orientation(simulator);
+        long key = tableKey(simulator, orientation);
+        long entry = table.probe(key);
+        int count = simulator.legalMoves(moves[0]);
+        scoreMoves(0, count, entry == 0 ? TranspositionTable.NO_MOVE : fromTableMove(TranspositionTable.move(entry), orientation));
+
+        int alpha = -INFINITY;
+        int best = -1;
+        for (int i = 0; i < count; i++) {
+            int move = nextMove(0, i, count);
+            if (i == 0)
+                rootMoveTriedFirst = move;
+            play(move);
+            int value = -negamax(depth - 1, 1, -INFINITY, -alpha);
+            takeBack();
+            if (aborted)
+                return best;
+            if (value > alpha) {
+                alpha = value;
+                best = move;
+            }
+        }
+        score = alpha;
+        table.store(key, toTable(alpha, 0), toTableMove(best, orientation), depth, TranspositionTable.EXACT);
+        return best;
+    }
+
+    private int negamax(int depth, int ply, int alpha, int beta) {
+        if (simulator.getGameOver() == GameOverState.Win)
+            return -(WIN - ply); // The player who just moved won
+        if (simulator.getGameOver() == GameOverState.Tie)
+            return 0;
+        if ((++nodes & CLOCK_INTERVAL) == 0 && System.nanoTime() >= deadline)
+            aborted = true;
+        if (aborted)
+            return 0;
+        if (depth == 0)
+            return evaluator.evaluate(simulator.getCurrentPlayer());
+
+        int orientation = orientation(simulator);
+        long key = tableKey(simulator, orientation);
+        long entry = table.probe(key);
+        int tableMove = TranspositionTable.NO_MOVE;
+        if (entry != 0) {
+            tableMove = fromTableMove(TranspositionTable.move(entry), orientation);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int stored = fromTable(TranspositionTable.score(entry), ply);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT)
+                    return stored;
+                if (bound == TranspositionTable.LOWER_BOUND)
+                    alpha = Math.max(alpha, stored);
+                else
+                    beta = Math.min(beta, stored);
+                if (alpha >= beta)
+                    return stored;
+            }
+        }
+
+        int originalAlpha = alpha;
+        int player = simulator.getCurrentPlayer();
+        int count = simulator.legalMoves(moves[ply]);
+        scoreMoves(ply, count, tableMove);
+        int best = -INFINITY;
+        int bestMove = TranspositionTable.NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            int move = nextMove(ply, i, count);
+            play(move);
+            int value = -negamax(depth - 1, ply + 1, -beta, -alpha);
+            takeBack();
+            if (aborted)
+                return 0;
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (value > alpha)
+                    alpha = value;
+                if (alpha >= beta) {
+                    addKiller(ply, move);
+                    addHistory(player, move, depth);
+                    break;
+                }
+            }
+        }
+
+        int bound = best <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                : best >= beta ? TranspositionTable.LOWER_BOUND
+                : TranspositionTable.EXACT;
+        table.store(key, toTable(best, ply), toTableMove(bestMove, orientation), depth, bound);
+        return best;
+    }
+
+    // The symmetry that takes the position to the orientation the table uses
+    private int orientation(GameSimulator position) {
+        return position.getMoveNumber() < symmetryPlies ? Symmetry.canonical(position) : Symmetry.IDENTITY;
+    }
+
+    private static long tableKey(GameSimulator position, int orientation) {
+        return orientation == Symmetry.IDENTITY ? position.getZobristKey() : Symmetry.key(position, orientation);
+    }
+
+    private static int toTableMove(int move, int orientation) {
+        return move == TranspositionTable.NO_MOVE ? move : Symmetry.move(orientation, move);
+    }
+
+    private static int fromTableMove(int move, int orientation) {
+        return move == TranspositionTable.NO_MOVE ? move : Symmetry.unmove(orientation, move);
+    }
+
+    private void play(int move) {
+        simulator.apply(move);
+        evaluator.played(simulator, move);
+    }
+
+    private void takeBack() {
+        simulator.undo();
+        evaluator.undo();
+    }
+
+    private void scoreMoves(int ply, int count, int tableMove) {
+        int[] plyMoves = moves[ply];
+        int[] plyOrder = order[ply];
+        int[] playerHistory = history[simulator.getCurrentPlayer()];
+        for (int i = 0; i < count; i++) {
+            int move = plyMoves[i];
+            if (move == tableMove)
+                plyOrder[i] = TT_MOVE_ORDER;
+            else if (move == killers[ply][0] || move == killers[ply][1])
+                plyOrder[i] = KILLER_ORDER;
+            else
+                plyOrder[i] = playerHistory[move];
+        }
+    }
+
+    // Moves the best of the remaining moves to index i and returns it. Usually a cut comes
+    // after a few moves, so this is cheaper than sorting them all
+    private int nextMove(int ply, int i, int count) {
+        int[] plyMoves = moves[ply];
+        int[] plyOrder = order[ply];
+        int best = i;
+        for (int j = i + 1; j < count; j++) {
+            if (plyOrder[j] > plyOrder[best])
+                best = j;
+        }
+        int move = plyMoves[best];
+        plyMoves[best] = plyMoves[i];
+        plyMoves[i] = move;
+        int value = plyOrder[best];
+        plyOrder[best] = plyOrder[i];
+        plyOrder[i] = value;
+        return move;
+    }
+
+    private void addKiller(int ply, int move) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+    }
+
+    private void addHistory(int player, int move, int depth) {
+        int[] playerHistory = history[player];
+        playerHistory[move] += depth * depth;
+        if (playerHistory[move] > HISTORY_LIMIT) {
+            for (int i = 0; i < playerHistory.length; i++)
+                playerHistory[i] >>= 1;
+        }
+    }
+
+    // Win scores depend on the ply, the table stores them as seen from the position itself
+    private static int toTable(int value, int ply) {
+        if (value > WIN_BOUND)
+            return value + ply;
+        if (value < -WIN_BOUND)
+            return value - ply;
+        return value;
+    }
+
+    private static int fromTable(int value, int ply) {
+        if (value > WIN_BOUND)
+            return value - ply;
+        if (value < -WIN_BOUND)
+            return value + ply;
+        return value;
+    }
+}
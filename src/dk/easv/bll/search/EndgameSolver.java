@@ -0,0 +1,329 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.WinLines;
+import dk.easv.bll.simulator.GameSimulator;
+
+import java.util.Arrays;
+
+/**
+ * Exact solver for the end of the game: finds out if the player to move wins, draws or loses
+ * with perfect play, and a move that gets that result.
+ *
+ * It is an alpha-beta negamax over the three results, so a window can only be (LOSS, DRAW),
+ * (DRAW, WIN) or (LOSS, WIN) and most nodes are cut after the first move that reaches it.
+ * Results are memoised in a fixed size cache as lower and upper bounds keyed on the Zobrist key.
+ * A result is a fact about the position, so the cache is kept from move to move and the next
+ * solve usually starts on positions it has already seen. Buckets have two entries: the first
+ * keeps the position with the most empty cells (the biggest subtree), the second always takes
+ * the newest result.
+ *
+ * A game is also a draw once neither player can complete a line of microboards, which cuts
+ * off most of the tree in the last moves.
+ *
+ * The solver is only worth it with few empty cells, see isEndgame(). The cache takes 12 MB by
+ * default. A solver is not thread safe.
+ */
+public class EndgameSolver {
+    public static final int WIN = 1;
+    public static final int DRAW = 0;
+    public static final int LOSS = -1;
+
+    /**
+     * The default for setMaxEmptyCells(), unless the system property uttt.endgame sets another.
+     * With 22 empty cells a solve takes a few milliseconds and now and then a few hundred.
+     */
+    public static final int DEFAULT_MAX_EMPTY_CELLS = 22;
+    public static final int DEFAULT_CACHE_BITS = 20;
+
+    // Nodes between looking at the clock
+    private static final int CLOCK_INTERVAL = 1023;
+    private static final int NO_MOVE = 127;
+
+    private final GameSimulator simulator = new GameSimulator();
+    private final int[][] moves = new int[82][81];
+    private final long[] keys;
+    // Entry: move << 16 | empty cells << 8 | 1 << 4 | (lower + 1) << 2 | (upper + 1), 0 if empty
+    private final int[] entries;
+    private final int bucketMask;
+    private int maxEmptyCells = Integer.getInteger("uttt.endgame", DEFAULT_MAX_EMPTY_CELLS);
+
+    private long deadline;
+    private long nodes;
+    private boolean aborted;
+    private int result;
+    private int bestMove = -1;
+
+    public EndgameSolver() {
+        this(DEFAULT_CACHE_BITS);
+    }
+
+    /**
+     * @param cacheBits The cache holds 2^cacheBits results, 12 bytes each
+     */
+    public EndgameSolver(int cacheBits) {
+        if (cacheBits < 1 || cacheBits > 30)
+            throw new IllegalArgumentException("cacheBits must be 1-30, was " + cacheBits);
+        keys = new long[1 << cacheBits];
+        entries = new int[1 << cacheBits];
+        bucketMask = (1 << (cacheBits - 1)) - 1;
+    }
+
+    /**
+     * @param maxEmptyCells isEndgame() is true with this many empty cells or fewer
+     */
+    public EndgameSolver setMaxEmptyCells(int maxEmptyCells) {
+        this.maxEmptyCells = maxEmptyCells;
+        return this;
+    }
+
+    public int getMaxEmptyCells() {
+        return maxEmptyCells;
+    }
+
+    /**
+     * @param position The position
+     * @return Returns true if the game is on and has at most getMaxEmptyCells() empty cells
+     */
+    public boolean isEndgame(GameSimulator position) {
+        return position.getGameOver() == GameOverState.Active && emptyCells(position) <= maxEmptyCells;
+    }
+
+    /**
+     * @param position The position
+     * @return The number of empty cells in microboards that are not won or tied yet
+     */
+    public static int emptyCells(GameSimulator position) {
+        int open = ~(position.getMacroboardMask(0) | position.getMacroboardMask(1) | position.getTiedMicroboards())
+                & WinLines.FULL_MASK;
+        int count = 0;
+        for (; open != 0; open &= open - 1) {
+            int microboard = Integer.numberOfTrailingZeros(open);
+            count += 9 - Integer.bitCount(position.getMicroboardMask(0, microboard) | position.getMicroboardMask(1, microboard));
+        }
+        return count;
+    }
+
+    /**
+     * Solves the position, or gives up at the deadline.
+     * @param position The position, it is copied
+     * @param deadlineNanos System.nanoTime() to give up at
+     * @return Returns true if the position was solved, see getResult() and getBestMove()
+     */
+    public boolean solve(GameSimulator position, long deadlineNanos) {
+        simulator.copyFrom(position);
+        deadline = deadlineNanos;
+        nodes = 0;
+        aborted = false;
+        bestMove = -1;
+        result = LOSS;
+        if (simulator.getGameOver() != GameOverState.Active)
+            return false;
+
+        // Only the first move gets the whole window, the rest get (result, WIN): a move that is no
+        // better than the best so far fails low, a better one gets its exact result, so result is exact
+        int[] rootMoves = moves[0];
+        int count = simulator.legalMoves(rootMoves);
+        int first = orderMoves(0, count, cachedMove(simulator.getZobristKey()));
+        bestMove = rootMoves[first];
+        for (int i = 0; i < count && result < WIN; i++) {
+            int move = rootMoves[i == 0 ? first : i == first ? 0 : i];
+            simulator.apply(move);
+            int value = -negamax(1, -WIN, -result);
+            simulator.undo();
+            if (aborted) {
+                bestMove = -1;
+                return false;
+            }
+            if (value > result) {
+                result = value;
+                bestMove = move;
+            }
+        }
+        store(simulator.getZobristKey(), result, result, bestMove);
+        return true;
+    }
+
+    /**
+     * Solves the position with half the time for the move, for a bot that searches if it is not solved.
+     * A lost position is left to the search too, it makes the opponent work for the win.
+     * @param position The position, it is copied
+     * @param startNanos System.nanoTime() when the bot's doMove was called
+     * @param hardDeadline System.nanoTime() the bot must have a move by
+     * @return A move that wins or draws for sure as a cell index, or -1 if the position is not an
+     * endgame, is not solved in time or is lost
+     */
+    public int solveMove(GameSimulator position, long startNanos, long hardDeadline) {
+        if (!isEndgame(position) || !solve(position, startNanos + (hardDeadline - startNanos) / 2))
+            return -1;
+        return result == LOSS ? -1 : bestMove;
+    }
+
+    /**
+     * @return WIN, DRAW or LOSS for the player to move, after a solve() that returned true
+     */
+    public int getResult() {
+        return result;
+    }
+
+    /**
+     * @return A move that gets the result as a cell index, or -1 if the last solve() gave up
+     */
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    /**
+     * @return The number of positions the last solve() looked at
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+    }
+
+    private int negamax(int ply, int alpha, int beta) {
+        if ((++nodes & CLOCK_INTERVAL) == 0 && System.nanoTime() >= deadline)
+            aborted = true;
+        if (aborted)
+            return DRAW;
+        if (simulator.getGameOver() != GameOverState.Active)
+            return simulator.getWinner() == GameSimulator.NO_PLAYER ? DRAW
+                    : simulator.getWinner() == simulator.getCurrentPlayer() ? WIN : LOSS;
+        if (!canWin(0) && !canWin(1))
+            return DRAW;
+
+        long key = simulator.getZobristKey();
+        int tableMove = NO_MOVE;
+        int entry = probe(key);
+        if (entry != 0) {
+            int lower = lowerOf(entry);
+            int upper = upperOf(entry);
+            if (lower >= beta || lower == upper)
+                return lower;
+            if (upper <= alpha)
+                return upper;
+            alpha = Math.max(alpha, lower);
+            beta = Math.min(beta, upper);
+            tableMove = (entry >>> 16) & 0x7F;
+        }
+
+        int originalAlpha = alpha;
+        int[] plyMoves = moves[ply];
+        int count = simulator.legalMoves(plyMoves);
+        int first = orderMoves(ply, count, tableMove);
+        int best = LOSS - 1;
+        int bestMove = NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            int move = plyMoves[i == 0 ? first : i == first ? 0 : i];
+            simulator.apply(move);
+            int value = -negamax(ply + 1, -beta, -alpha);
+            simulator.undo();
+            if (aborted)
+                return DRAW;
+            if (value > best) {
+                best = value;
+                bestMove = move;
+                if (value > alpha)
+                    alpha = value;
+                if (alpha >= beta)
+                    break;
+            }
+        }
+
+        if (best <= originalAlpha)
+            store(key, LOSS, best, bestMove);
+        else if (best >= beta)
+            store(key, best, WIN, bestMove);
+        else
+            store(key, best, best, bestMove);
+        return best;
+    }
+
+    /**
+     * Moves the moves that win a microboard to the front and picks the one to try first:
+     * the cached move if there is one, else the first of those.
+     * @return The index of the move to try first
+     */
+    private int orderMoves(int ply, int count, int tableMove) {
+        int[] plyMoves = moves[ply];
+        int player = simulator.getCurrentPlayer();
+        int winning = 0;
+        for (int i = 0; i < count; i++) {
+            int move = plyMoves[i];
+            int mask = simulator.getMicroboardMask(player, GameSimulator.microboardOf(move)) | 1 << GameSimulator.positionOf(move);
+            if (WinLines.isWin(mask)) {
+                plyMoves[i] = plyMoves[winning];
+                plyMoves[winning++] = move;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (plyMoves[i] == tableMove)
+                return i;
+        }
+        return 0;
+    }
+
+    /**
+     * @return Returns true if a line of microboards is still free of the opponent's and tied ones
+     */
+    private boolean canWin(int player) {
+        int blocked = simulator.getMacroboardMask(1 - player) | simulator.getTiedMicroboards();
+        for (int line : WinLines.LINES) {
+            if ((line & blocked) == 0)
+                return true;
+        }
+        return false;
+    }
+
+    private int cachedMove(long key) {
+        int entry = probe(key);
+        return entry == 0 ? NO_MOVE : (entry >>> 16) & 0x7F;
+    }
+
+    private int probe(long key) {
+        int slot = slotOf(key);
+        if (keys[slot] == key && entries[slot] != 0)
+            return entries[slot];
+        if (keys[slot + 1] == key && entries[slot + 1] != 0)
+            return entries[slot + 1];
+        return 0;
+    }
+
+    private void store(long key, int lower, int upper, int move) {
+        int slot = slotOf(key);
+        // Bounds from an earlier solve of the same position still hold, keep the tighter ones
+        int old = probe(key);
+        if (old != 0 && Math.max(lower, lowerOf(old)) <= Math.min(upper, upperOf(old))) {
+            lower = Math.max(lower, lowerOf(old));
+            upper = Math.min(upper, upperOf(old));
+        }
+        int empty = emptyCells(simulator);
+        int entry = move << 16 | empty << 8 | 1 << 4 | (lower + 1) << 2 | (upper + 1);
+        if (entries[slot] == 0 || keys[slot] == key || empty >= (entries[slot] >>> 8 & 0xFF)) {
+            if (keys[slot + 1] == key)
+                entries[slot + 1] = 0;
+            keys[slot] = key;
+            entries[slot] = entry;
+        }
+        else {
+            keys[slot + 1] = key;
+            entries[slot + 1] = entry;
+        }
+    }
+
+    private static int lowerOf(int entry) {
+        return (entry >>> 2 & 3) - 1;
+    }
+
+    private static int upperOf(int entry) {
+        return (entry & 3) - 1;
+    }
+
+    private int slotOf(long key) {
+        return (int) ((key ^ key >>> 32) & bucketMask) << 1;
+    }
+}
@@ -0,0 +1,36 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.simulator.GameSimulator;
+
+/**
+ * A Monte Carlo tree search that keeps its tree between moves.
+ * MctsTree searches on one thread, RootParallelMcts and SharedMctsTree on several.
+ */
+public interface MctsSearch {
+
+    /**
+     * Makes the position the root, keeping what is known about it if possible.
+     * @param position The position to search
+     * @return Returns true if the existing tree could be used
+     */
+    boolean moveTo(GameSimulator position);
+
+    /**
+     * Searches until the deadline.
+     * @param deadlineNanos System.nanoTime() to stop at
+     * @return The number of playouts run
+     */
+    int search(long deadlineNanos);
+
+    /**
+     * @return The root move that was visited the most, or -1 if there is none
+     */
+    int bestMove();
+
+    /**
+     * Plays a move at the root and keeps the subtree below it.
+     * @param playedMove Cell index, x*9+y, it must be legal in the root position
+     * @return Returns true if the move had a subtree to keep
+     */
+    boolean advance(int playedMove);
+}
@@ -0,0 +1,325 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.simulator.GameSimulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * A Monte Carlo tree search with UCT selection and random playouts.
+ *
+ * The nodes live in flat arrays instead of objects: a node is an index, and the children
+ * of a node are a block of consecutive indexes starting at firstChild. All children of
+ * a node are added at once, the second time the node is reached.
+ * Every node keeps the wins of the player who made the move leading to it (a tie counts
+ * as half a win), so the parent can pick the child that is best for the player to move.
+ *
+ * The tree can be kept between moves: advance() moves the root to one of its children
+ * and copies that subtree to the front of the pool, so the search work done for that
+ * position is not lost. When the pool is full the search goes on without adding nodes.
+ *
+ * A tree is not thread safe.
+ */
+public class MctsTree implements MctsSearch {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    public static final double DEFAULT_EXPLORATION = Math.sqrt(2);
+
+    private static final int NO_CHILDREN = -1;
+    private static final int MAX_DEPTH = 82;
+
+    private final int capacity;
+    private final double exploration;
+
+    // The node pool, and a second one that the kept subtree is copied to in advance().
+    // Both are allocated up front so that advance() takes no time out of the next move
+    private int[] firstChild;
+    private byte[] childCount;
+    private byte[] move;
+    private int[] visits;
+    private float[] wins;
+    private int[] spareFirstChild;
+    private byte[] spareChildCount;
+    private byte[] spareMove;
+    private int[] spareVisits;
+    private float[] spareWins;
+    private int[] copiedFrom;
+    private int size;
+
+    private final GameSimulator rootState = new GameSimulator();
+    private final GameSimulator simulator = new GameSimulator();
+    private final int[] path = new int[MAX_DEPTH];
+    private final int[] movers = new int[MAX_DEPTH];
+    private final int[] moveBuffer = new int[81];
+    private final SplittableRandom random;
+
+    public MctsTree() {
+        this(DEFAULT_CAPACITY, DEFAULT_EXPLORATION, new SplittableRandom());
+    }
+
+    /**
+     * @param capacity The most nodes the tree can hold
+     * @param exploration The UCT exploration constant
+     * @param random Random numbers for the playouts
+     */
+    public MctsTree(int capacity, double exploration, SplittableRandom random) {
+        this.capacity = capacity;
+        this.exploration = exploration;
+        this.random = random;
+        firstChild = new int[capacity];
+        childCount = new byte[capacity];
+        move = new byte[capacity];
+        visits = new int[capacity];
+        wins = new float[capacity];
+        spareFirstChild = new int[capacity];
+        spareChildCount = new byte[capacity];
+        spareMove = new byte[capacity];
+        spareVisits = new int[capacity];
+        spareWins = new float[capacity];
+        copiedFrom = new int[capacity];
+        reset(rootState);
+    }
+
+    /**
+     * Throws the tree away and starts over from a position.
+     * @param position The new root position, it is copied
+     */
+    public void reset(GameSimulator position) {
+        if (position != rootState)
+            rootState.copyFrom(position);
+        size = 0;
+        newNode(-1);
+    }
+
+    /**
+     * Makes the position the root, keeping the search below it if it is the current root
+     * or one move away from it. Otherwise the tree starts over.
+     * @param position The position to search
+     * @return Returns true if the existing tree could be used
+     */
+    @Override
+    public boolean moveTo(GameSimulator position) {
+        if (rootState.getZobristKey() == position.getZobristKey()
+                && rootState.getMoveNumber() == position.getMoveNumber())
+            return true;
+        if (position.getMoveNumber() == rootState.getMoveNumber() + 1 && rootState.getGameOver() == GameOverState.Active) {
+            int count = rootState.legalMoves(moveBuffer);
+            for (int i = 0; i < count; i++) {
+                rootState.apply(moveBuffer[i]);
+                boolean found = rootState.getZobristKey() == position.getZobristKey();
+                rootState.undo();
+                if (found)
+                    return advance(moveBuffer[i]);
+            }
+        }
+        reset(position);
+        return false;
+    }
+
+    /**
+     * Plays a move at the root and keeps the subtree below it.
+     * @param playedMove Cell index, x*9+y, it must be legal in the root position
+     * @return Returns true if the move had a subtree to keep
+     */
+    @Override
+    public boolean advance(int playedMove) {
+        int child = findChild(0, playedMove);
+        rootState.apply(playedMove);
+        if (child < 0) {
+            reset(rootState);
+            return false;
+        }
+        keepSubtree(child);
+        return true;
+    }
+
+    /**
+     * Runs iterations until the deadline.
+     * @param deadlineNanos System.nanoTime() to stop at
+     * @return The number of playouts run
+     */
+    @Override
+    public int search(long deadlineNanos) {
+        int playouts = 0;
+        if (rootState.getGameOver() != GameOverState.Active)
+            return 0;
+        do {
+            // Checking the clock costs more than an iteration, so do a few at a time
+            for (int i = 0; i < 64; i++)
+                iterate();
+            playouts += 64;
+        } while (System.nanoTime() < deadlineNanos);
+        return playouts;
+    }
+
+    /**
+     * Runs one selection, expansion, playout and backpropagation.
+     */
+    public void iterate() {
+        simulator.copyFrom(rootState);
+        int node = 0;
+        int depth = 0;
+        path[depth] = node;
+        movers[depth++] = 1 - simulator.getCurrentPlayer();
+
+        while (simulator.getGameOver() == GameOverState.Active) {
+            if (firstChild[node] == NO_CHILDREN) {
+                // A leaf: the first visit only plays out, the second one adds the children
+                if (visits[node] == 0 && node != 0 || !expand(node))
+                    break;
+            }
+            node = select(node);
+            movers[depth] = simulator.getCurrentPlayer();
+            simulator.apply(move[node]);
+            path[depth++] = node;
+        }
+
+        int winner = simulator.getGameOver() == GameOverState.Active
+                ? simulator.randomPlayout(random)
+                : simulator.getWinner();
+        for (int i = 0; i < depth; i++) {
+            int n = path[i];
+            visits[n]++;
+            if (winner == movers[i])
+                wins[n] += 1;
+            else if (winner == GameSimulator.NO_PLAYER)
+                wins[n] += 0.5f;
+        }
+    }
+
+    /**
+     * @return The root move that was visited the most, or -1 if the root has no children
+     */
+    @Override
+    public int bestMove() {
+        int best = -1;
+        int bestVisits = -1;
+        int first = firstChild[0];
+        if (first == NO_CHILDREN)
+            return -1;
+        for (int child = first; child < first + childCount[0]; child++) {
+            if (visits[child] > bestVisits) {
+                bestVisits = visits[child];
+                best = move[child];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The number of playouts through the root
+     */
+    public int getRootVisits() {
+        return visits[0];
+    }
+
+    /**
+     * @param rootMove Cell index of a move at the root
+     * @return The number of playouts that started with the move, 0 if it has no node
+     */
+    public int getVisits(int rootMove) {
+        int child = findChild(0, rootMove);
+        return child < 0 ? 0 : visits[child];
+    }
+
+    /**
+     * @param rootMove Cell index of a move at the root
+     * @return The wins of the root player after the move, ties count half
+     */
+    public double getWins(int rootMove) {
+        int child = findChild(0, rootMove);
+        return child < 0 ? 0 : wins[child];
+    }
+
+    /**
+     * @return The number of nodes in use
+     */
+    public int size() {
+        return size;
+    }
+
+    public GameSimulator getRootState() {
+        return rootState;
+    }
+
+    private boolean expand(int node) {
+        int count = simulator.legalMoves(moveBuffer);
+        if (count == 0 || size + count > capacity)
+            return false;
+        int first = size;
+        for (int i = 0; i < count; i++)
+            move[newNode(-1)] = (byte) moveBuffer[i];
+        firstChild[node] = first;
+        childCount[node] = (byte) count;
+        return true;
+    }
+
+    private int select(int node) {
+        int first = firstChild[node];
+        int end = first + childCount[node];
+        double logVisits = Math.log(Math.max(1, visits[node]));
+        int best = first;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < end; child++) {
+            int n = visits[child];
+            if (n == 0)
+                return child;
+            double score = wins[child] / n + exploration * Math.sqrt(logVisits / n);
+            if (score > bestScore) {
+                bestScore = score;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    private int findChild(int node, int childMove) {
+        int first = firstChild[node];
+        if (first == NO_CHILDREN)
+            return -1;
+        for (int child = first; child < first + childCount[node]; child++) {
+            if (move[child] == childMove)
+                return child;
+        }
+        return -1;
+    }
+
+    private int newNode(int firstChildIndex) {
+        int node = size++;
+        firstChild[node] = firstChildIndex;
+        childCount[node] = 0;
+        move[node] = 0;
+        visits[node] = 0;
+        wins[node] = 0;
+        return node;
+    }
+
+    /**
+     * Copies the subtree below the node to the spare pool, breadth first so that
+     * children stay next to each other, and swaps the pools.
+     */
+    private void keepSubtree(int newRoot) {
+        int copied = 0;
+        copiedFrom[copied++] = newRoot;
+        for (int i = 0; i < copied; i++) {
+            int old = copiedFrom[i];
+            spareChildCount[i] = childCount[old];
+            spareMove[i] = move[old];
+            spareVisits[i] = visits[old];
+            spareWins[i] = wins[old];
+            if (firstChild[old] == NO_CHILDREN) {
+                spareFirstChild[i] = NO_CHILDREN;
+                continue;
+            }
+            spareFirstChild[i] = copied;
+            for (int child = firstChild[old]; child < firstChild[old] + childCount[old]; child++)
+                copiedFrom[copied++] = child;
+        }
+
+        int[] ints = firstChild; firstChild = spareFirstChild; spareFirstChild = ints;
+        byte[] bytes = childCount; childCount = spareChildCount; spareChildCount = bytes;
+        bytes = move; move = spareMove; spareMove = bytes;
+        ints = visits; visits = spareVisits; spareVisits = ints;
+        float[] floats = wins; wins = spareWins; spareWins = floats;
+        size = copied;
+    }
+}
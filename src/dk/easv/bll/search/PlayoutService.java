@@ -0,0 +1,167 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.WinLines;
+import dk.easv.bll.simulator.GameSimulator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Plays playouts from a position on several threads and counts wins, draws and losses
+ * for every first move. The first moves are taken in turn, so every move gets about the
+ * same number of playouts.
+ *
+ * Every thread has its own random generator, simulators and counters, the counters are
+ * added up when the threads are done. A service runs one batch at a time.
+ *
+ * The threads besides the caller come from the pool all searches share (see SearchThreads),
+ * so a service starts no threads of its own and needs no shutdown. When other bots keep the
+ * pool busy, the caller plays the workers' shares itself.
+ */
+public class PlayoutService {
+
+    public enum Policy {
+        Random, // Every move is picked at random
+        Heavy   // A move that wins a microboard is taken if there is one, else a random move
+    }
+
+    private final SearchThreads threads;
+    private final Worker[] workers;
+    private final GameSimulator root = new GameSimulator();
+    private final int[] rootMoves = new int[81];
+    private int rootMoveCount;
+    private Policy policy = Policy.Random;
+
+    /**
+     * A service with a thread per core.
+     */
+    public PlayoutService() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads The number of workers, the calling thread is one of them
+     */
+    public PlayoutService(int threads) {
+        this.threads = new SearchThreads(threads);
+        workers = new Worker[threads];
+        SplittableRandom random = new SplittableRandom();
+        for (int i = 0; i < threads; i++)
+            workers[i] = new Worker(random.split());
+    }
+
+    public PlayoutService setPolicy(Policy policy) {
+        this.policy = policy;
+        return this;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public int getThreads() {
+        return threads.getThreads();
+    }
+
+    /**
+     * Plays until the deadline.
+     * @param position The position, it is copied
+     * @param deadlineNanos System.nanoTime() to stop at
+     * @return The results by first move
+     */
+    public PlayoutStats runUntil(GameSimulator position, long deadlineNanos) {
+        return run(position, deadlineNanos, Long.MAX_VALUE);
+    }
+
+    /**
+     * Plays a number of playouts, split over the threads.
+     * @param position The position, it is copied
+     * @param playouts The number of playouts in total
+     * @return The results by first move
+     */
+    public PlayoutStats run(GameSimulator position, long playouts) {
+        return run(position, Long.MAX_VALUE, playouts);
+    }
+
+    private PlayoutStats run(GameSimulator position, long deadlineNanos, long playouts) {
+        root.copyFrom(position);
+        rootMoveCount = root.legalMoves(rootMoves);
+        PlayoutStats stats = new PlayoutStats(Arrays.copyOf(rootMoves, rootMoveCount));
+        if (rootMoveCount == 0)
+            return stats;
+
+        int threadCount = threads.getThreads();
+        threads.runAll(i -> {
+            long share = playouts / threadCount + (i < playouts % threadCount ? 1 : 0);
+            // Start the threads at different moves, so short batches still cover all of them
+            return workers[i].play(i * rootMoveCount / threadCount, share, deadlineNanos);
+        });
+        for (Worker worker : workers)
+            worker.addTo(stats);
+        return stats;
+    }
+
+    /**
+     * What one thread needs for itself.
+     */
+    private class Worker {
+        private final GameSimulator simulator = new GameSimulator();
+        private final int[] moveBuffer = new int[81];
+        private final long[] counts = new long[81 * 3]; // move*3 + win, draw or loss
+        private final SplittableRandom random;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+        }
+
+        int play(int firstMove, long playouts, long deadlineNanos) {
+            Arrays.fill(counts, 0);
+            Policy batchPolicy = policy;
+            int player = root.getCurrentPlayer();
+            int next = firstMove;
+            long played = 0;
+            while (played < playouts) {
+                // Checking the clock costs more than a playout, so play a few at a time
+                long batchEnd = Math.min(playouts, played + 16);
+                for (; played < batchEnd; played++) {
+                    int move = rootMoves[next];
+                    next = next + 1 == rootMoveCount ? 0 : next + 1;
+                    simulator.copyFrom(root);
+                    simulator.apply(move);
+                    int winner = batchPolicy == Policy.Heavy ? heavyPlayout() : simulator.randomPlayout(random);
+                    counts[move * 3 + (winner == player ? 0 : winner == GameSimulator.NO_PLAYER ? 1 : 2)]++;
+                }
+                if (System.nanoTime() >= deadlineNanos)
+                    break;
+            }
+            return (int) Math.min(Integer.MAX_VALUE, played);
+        }
+
+        private int heavyPlayout() {
+            while (simulator.getGameOver() == GameOverState.Active) {
+                int count = simulator.legalMoves(moveBuffer);
+                int player = simulator.getCurrentPlayer();
+                int move = moveBuffer[random.nextInt(count)];
+                for (int i = 0; i < count; i++) {
+                    int candidate = moveBuffer[i];
+                    int microboard = GameSimulator.microboardOf(candidate);
+                    int mask = simulator.getMicroboardMask(player, microboard) | 1 << GameSimulator.positionOf(candidate);
+                    if (WinLines.isWin(mask)) {
+                        move = candidate;
+                        break;
+                    }
+                }
+                simulator.apply(move);
+            }
+            return simulator.getWinner();
+        }
+
+        void addTo(PlayoutStats stats) {
+            for (int i = 0; i < rootMoveCount; i++) {
+                int move = rootMoves[i];
+                stats.add(move, counts[move * 3], counts[move * 3 + 1], counts[move * 3 + 2]);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package dk.easv.bll.search;
+
+/**
+ * Results of playouts by first move, counted for the player to move at the root.
+ * Made by PlayoutService.
+ */
+public class PlayoutStats {
+    private final int[] moves;
+    private final long[] wins = new long[81];
+    private final long[] draws = new long[81];
+    private final long[] losses = new long[81];
+
+    PlayoutStats(int[] moves) {
+        this.moves = moves;
+    }
+
+    void add(int move, long moveWins, long moveDraws, long moveLosses) {
+        wins[move] += moveWins;
+        draws[move] += moveDraws;
+        losses[move] += moveLosses;
+    }
+
+    /**
+     * @return The legal moves at the root as cell indexes, do not change the array
+     */
+    public int[] getMoves() {
+        return moves;
+    }
+
+    public long getWins(int move) {
+        return wins[move];
+    }
+
+    public long getDraws(int move) {
+        return draws[move];
+    }
+
+    public long getLosses(int move) {
+        return losses[move];
+    }
+
+    public long getPlayouts(int move) {
+        return wins[move] + draws[move] + losses[move];
+    }
+
+    public long getTotalPlayouts() {
+        long total = 0;
+        for (int move : moves)
+            total += getPlayouts(move);
+        return total;
+    }
+
+    /**
+     * @param move Cell index
+     * @return Wins plus half the draws, divided by the playouts, 0 if the move has none
+     */
+    public double getScore(int move) {
+        long playouts = getPlayouts(move);
+        return playouts == 0 ? 0 : (wins[move] + draws[move] / 2.0) / playouts;
+    }
+
+    /**
+     * @return The move with the best score, or -1 if there are no moves
+     */
+    public int bestMove() {
+        int best = -1;
+        double bestScore = -1;
+        for (int move : moves) {
+            if (getScore(move) > bestScore) {
+                bestScore = getScore(move);
+                best = move;
+            }
+        }
+        return best;
+    }
+}
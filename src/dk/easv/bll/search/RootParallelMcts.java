@@ -0,0 +1,82 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.simulator.GameSimulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Root parallelisation: every thread searches its own MctsTree from the same root, and the
+ * visits of the root moves are added up at the end. The trees share nothing while searching,
+ * so there is no synchronisation, but the threads repeat much of each other's work.
+ */
+public class RootParallelMcts implements MctsSearch {
+    private static final int MIN_CAPACITY = 1 << 16;
+
+    private final MctsTree[] trees;
+    private final SearchThreads threads;
+    private final int[] moveBuffer = new int[81];
+
+    /**
+     * @param threads The number of threads and trees
+     */
+    public RootParallelMcts(int threads) {
+        this(threads, Math.max(MIN_CAPACITY, MctsTree.DEFAULT_CAPACITY / threads), MctsTree.DEFAULT_EXPLORATION);
+    }
+
+    /**
+     * @param threads The number of threads and trees
+     * @param capacityPerTree The most nodes each tree can hold
+     * @param exploration The UCT exploration constant
+     */
+    public RootParallelMcts(int threads, int capacityPerTree, double exploration) {
+        this.threads = new SearchThreads(threads);
+        trees = new MctsTree[threads];
+        SplittableRandom random = new SplittableRandom();
+        for (int i = 0; i < threads; i++)
+            trees[i] = new MctsTree(capacityPerTree, exploration, random.split());
+    }
+
+    @Override
+    public boolean moveTo(GameSimulator position) {
+        boolean reused = true;
+        for (MctsTree tree : trees)
+            reused &= tree.moveTo(position);
+        return reused;
+    }
+
+    @Override
+    public int search(long deadlineNanos) {
+        return threads.runAll(i -> trees[i].search(deadlineNanos));
+    }
+
+    @Override
+    public int bestMove() {
+        GameSimulator root = trees[0].getRootState();
+        int count = root.legalMoves(moveBuffer);
+        int best = -1;
+        int bestVisits = 0;
+        for (int i = 0; i < count; i++) {
+            int move = moveBuffer[i];
+            int visits = 0;
+            for (MctsTree tree : trees)
+                visits += tree.getVisits(move);
+            if (visits > bestVisits) {
+                bestVisits = visits;
+                best = move;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public boolean advance(int playedMove) {
+        boolean reused = true;
+        for (MctsTree tree : trees)
+            reused &= tree.advance(playedMove);
+        return reused;
+    }
+
+    public int getThreads() {
+        return threads.getThreads();
+    }
+}
@@ -0,0 +1,86 @@
+package dk.easv.bll.search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Runs one task per search thread and waits for them all.
+ * The calling thread runs task 0 itself, the others go to a pool that all searches share.
+ *
+ * The pool has a thread per core less one, however many bots there are. When several bots
+ * search at the same time (e.g. games played in parallel by MatchRunner) they share those
+ * threads instead of each starting its own, and a bot that is thrown away leaves nothing
+ * behind. Tasks the pool has not started by the time the caller is done with task 0 are run
+ * by the caller, so a search never waits for a busy pool: it just gets fewer threads.
+ */
+final class SearchThreads {
+    private static final int FREE = 0;
+    private static final int POOL = 1;
+    private static final int CALLER = 2;
+
+    // Daemon threads, bots have no way to be shut down
+    private static final ExecutorService SHARED_POOL = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1), task -> {
+                Thread thread = new Thread(task, "search");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final int threads;
+    private final Future<?>[] futures;
+
+    SearchThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1, was " + threads);
+        this.threads = threads;
+        this.futures = new Future<?>[threads];
+    }
+
+    int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param task Gets the thread number, 0 to threads - 1, and returns its playouts.
+     *             Every number is run once, but not always on a thread of its own
+     * @return The sum of what the tasks returned
+     */
+    int runAll(IntUnaryOperator task) {
+        int[] results = new int[threads];
+        AtomicIntegerArray owners = new AtomicIntegerArray(threads); // FREE, POOL or CALLER
+        for (int i = 1; i < threads; i++) {
+            int index = i;
+            futures[i] = SHARED_POOL.submit(() -> {
+                if (owners.compareAndSet(index, FREE, POOL))
+                    results[index] = task.applyAsInt(index);
+            });
+        }
+        results[0] = task.applyAsInt(0);
+        for (int i = 1; i < threads; i++) {
+            if (owners.compareAndSet(i, FREE, CALLER)) {
+                futures[i].cancel(false);
+                results[i] = task.applyAsInt(i);
+            }
+        }
+
+        int total = results[0];
+        for (int i = 1; i < threads; i++) {
+            if (owners.get(i) == POOL) {
+                try {
+                    futures[i].get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the search threads", ex);
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException("Search thread failed", ex.getCause());
+                }
+            }
+            total += results[i];
+        }
+        return total;
+    }
+}
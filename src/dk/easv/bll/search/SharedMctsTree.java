@@ -0,0 +1,330 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.simulator.GameSimulator;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Tree parallelisation: all threads search one tree, laid out like MctsTree.
+ *
+ * The node statistics are atomic and no locks are taken:
+ * - A thread counts its visit when it walks into a node rather than after the playout.
+ *   Until the result comes back that visit counts as a loss (a virtual loss), which sends
+ *   the other threads down other paths.
+ * - Wins are kept in halves (2 for a win, 1 for a tie) so they can be added atomically.
+ * - A node is expanded by the thread that swaps its firstChild from NO_CHILDREN to EXPANDING.
+ *   Other threads treat it as a leaf until the children are published.
+ *
+ * Between searches the tree is used from one thread, like MctsTree, and is kept between moves.
+ */
+public class SharedMctsTree implements MctsSearch {
+    private static final int NO_CHILDREN = -1;
+    private static final int EXPANDING = -2;
+    private static final int MAX_DEPTH = 82;
+
+    private final int capacity;
+    private final double exploration;
+    private final SearchThreads threads;
+    private final Worker[] workers;
+
+    // The node pool, and a second one that the kept subtree is copied to in advance().
+    // Both are allocated up front so that advance() takes no time out of the next move.
+    // move and childCount are written before firstChild is set, which publishes them
+    private AtomicIntegerArray firstChild;
+    private byte[] childCount;
+    private byte[] move;
+    private AtomicIntegerArray visits;
+    private AtomicIntegerArray halfWins;
+    private AtomicIntegerArray spareFirstChild;
+    private byte[] spareChildCount;
+    private byte[] spareMove;
+    private AtomicIntegerArray spareVisits;
+    private AtomicIntegerArray spareHalfWins;
+    private int[] copiedFrom;
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean full;
+
+    private final GameSimulator rootState = new GameSimulator();
+    private final int[] moveBuffer = new int[81];
+
+    /**
+     * @param threads The number of search threads
+     */
+    public SharedMctsTree(int threads) {
+        this(threads, MctsTree.DEFAULT_CAPACITY, MctsTree.DEFAULT_EXPLORATION);
+    }
+
+    /**
+     * @param threads The number of search threads
+     * @param capacity The most nodes the tree can hold
+     * @param exploration The UCT exploration constant
+     */
+    public SharedMctsTree(int threads, int capacity, double exploration) {
+        this.capacity = capacity;
+        this.exploration = exploration;
+        this.threads = new SearchThreads(threads);
+        firstChild = new AtomicIntegerArray(capacity);
+        childCount = new byte[capacity];
+        move = new byte[capacity];
+        visits = new AtomicIntegerArray(capacity);
+        halfWins = new AtomicIntegerArray(capacity);
+        spareFirstChild = new AtomicIntegerArray(capacity);
+        spareChildCount = new byte[capacity];
+        spareMove = new byte[capacity];
+        spareVisits = new AtomicIntegerArray(capacity);
+        spareHalfWins = new AtomicIntegerArray(capacity);
+        copiedFrom = new int[capacity];
+        workers = new Worker[threads];
+        SplittableRandom random = new SplittableRandom();
+        for (int i = 0; i < threads; i++)
+            workers[i] = new Worker(random.split());
+        reset(rootState);
+    }
+
+    /**
+     * Throws the tree away and starts over from a position.
+     * @param position The new root position, it is copied
+     */
+    public void reset(GameSimulator position) {
+        if (position != rootState)
+            rootState.copyFrom(position);
+        size.set(1);
+        full = false;
+        firstChild.set(0, NO_CHILDREN);
+        visits.set(0, 0);
+        halfWins.set(0, 0);
+    }
+
+    @Override
+    public boolean moveTo(GameSimulator position) {
+        if (rootState.getZobristKey() == position.getZobristKey()
+                && rootState.getMoveNumber() == position.getMoveNumber())
+            return true;
+        if (position.getMoveNumber() == rootState.getMoveNumber() + 1 && rootState.getGameOver() == GameOverState.Active) {
+            int count = rootState.legalMoves(moveBuffer);
+            for (int i = 0; i < count; i++) {
+                rootState.apply(moveBuffer[i]);
+                boolean found = rootState.getZobristKey() == position.getZobristKey();
+                rootState.undo();
+                if (found)
+                    return advance(moveBuffer[i]);
+            }
+        }
+        reset(position);
+        return false;
+    }
+
+    @Override
+    public boolean advance(int playedMove) {
+        int child = findChild(0, playedMove);
+        rootState.apply(playedMove);
+        if (child < 0) {
+            reset(rootState);
+            return false;
+        }
+        keepSubtree(child);
+        return true;
+    }
+
+    @Override
+    public int search(long deadlineNanos) {
+        if (rootState.getGameOver() != GameOverState.Active)
+            return 0;
+        return threads.runAll(i -> workers[i].search(deadlineNanos));
+    }
+
+    @Override
+    public int bestMove() {
+        int first = firstChild.get(0);
+        if (first < 0)
+            return -1;
+        int best = -1;
+        int bestVisits = -1;
+        for (int child = first; child < first + childCount[0]; child++) {
+            if (visits.get(child) > bestVisits) {
+                bestVisits = visits.get(child);
+                best = move[child];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The number of playouts through the root
+     */
+    public int getRootVisits() {
+        return visits.get(0);
+    }
+
+    /**
+     * @param rootMove Cell index of a move at the root
+     * @return The number of playouts that started with the move, 0 if it has no node
+     */
+    public int getVisits(int rootMove) {
+        int child = findChild(0, rootMove);
+        return child < 0 ? 0 : visits.get(child);
+    }
+
+    /**
+     * @return The number of nodes in use
+     */
+    public int size() {
+        return Math.min(size.get(), capacity);
+    }
+
+    public GameSimulator getRootState() {
+        return rootState;
+    }
+
+    public int getThreads() {
+        return threads.getThreads();
+    }
+
+    private int findChild(int node, int childMove) {
+        int first = firstChild.get(node);
+        if (first < 0)
+            return -1;
+        for (int child = first; child < first + childCount[node]; child++) {
+            if (move[child] == childMove)
+                return child;
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the subtree below the node to the spare pool, breadth first so that
+     * children stay next to each other, and swaps the pools. No search may be running.
+     */
+    private void keepSubtree(int newRoot) {
+        int copied = 0;
+        copiedFrom[copied++] = newRoot;
+        for (int i = 0; i < copied; i++) {
+            int old = copiedFrom[i];
+            spareChildCount[i] = childCount[old];
+            spareMove[i] = move[old];
+            spareVisits.set(i, visits.get(old));
+            spareHalfWins.set(i, halfWins.get(old));
+            int first = firstChild.get(old);
+            if (first < 0) {
+                spareFirstChild.set(i, NO_CHILDREN);
+                continue;
+            }
+            spareFirstChild.set(i, copied);
+            for (int child = first; child < first + childCount[old]; child++)
+                copiedFrom[copied++] = child;
+        }
+
+        AtomicIntegerArray atomics = firstChild; firstChild = spareFirstChild; spareFirstChild = atomics;
+        byte[] bytes = childCount; childCount = spareChildCount; spareChildCount = bytes;
+        bytes = move; move = spareMove; spareMove = bytes;
+        atomics = visits; visits = spareVisits; spareVisits = atomics;
+        atomics = halfWins; halfWins = spareHalfWins; spareHalfWins = atomics;
+        size.set(copied);
+        full = false;
+    }
+
+    /**
+     * What one search thread needs for itself.
+     */
+    private class Worker {
+        private final GameSimulator simulator = new GameSimulator();
+        private final int[] path = new int[MAX_DEPTH];
+        private final int[] movers = new int[MAX_DEPTH];
+        private final int[] moveBuffer = new int[81];
+        private final SplittableRandom random;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+        }
+
+        int search(long deadlineNanos) {
+            int playouts = 0;
+            do {
+                for (int i = 0; i < 64; i++)
+                    iterate();
+                playouts += 64;
+            } while (System.nanoTime() < deadlineNanos);
+            return playouts;
+        }
+
+        void iterate() {
+            simulator.copyFrom(rootState);
+            int node = 0;
+            int depth = 0;
+            visits.incrementAndGet(node);
+            path[depth] = node;
+            movers[depth++] = 1 - simulator.getCurrentPlayer();
+
+            while (simulator.getGameOver() == GameOverState.Active) {
+                int first = firstChild.get(node);
+                if (first == EXPANDING)
+                    break;
+                if (first == NO_CHILDREN) {
+                    // Our own visit is already counted, so a leaf is expanded by its second visitor
+                    if (visits.get(node) < 2 && node != 0 || !expand(node))
+                        break;
+                }
+                node = select(node);
+                visits.incrementAndGet(node); // The virtual loss, until the playout is done
+                movers[depth] = simulator.getCurrentPlayer();
+                simulator.apply(move[node]);
+                path[depth++] = node;
+            }
+
+            int winner = simulator.getGameOver() == GameOverState.Active
+                    ? simulator.randomPlayout(random)
+                    : simulator.getWinner();
+            for (int i = 0; i < depth; i++) {
+                if (winner == movers[i])
+                    halfWins.addAndGet(path[i], 2);
+                else if (winner == GameSimulator.NO_PLAYER)
+                    halfWins.addAndGet(path[i], 1);
+            }
+        }
+
+        private boolean expand(int node) {
+            if (full || !firstChild.compareAndSet(node, NO_CHILDREN, EXPANDING))
+                return false;
+            int count = simulator.legalMoves(moveBuffer);
+            int first = size.getAndAdd(count);
+            if (first + count > capacity) {
+                full = true;
+                firstChild.set(node, NO_CHILDREN);
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                int child = first + i;
+                move[child] = (byte) moveBuffer[i];
+                childCount[child] = 0;
+                visits.set(child, 0);
+                halfWins.set(child, 0);
+                firstChild.set(child, NO_CHILDREN);
+            }
+            childCount[node] = (byte) count;
+            firstChild.set(node, first);
+            return true;
+        }
+
+        private int select(int node) {
+            int first = firstChild.get(node);
+            int end = first + childCount[node];
+            double logVisits = Math.log(Math.max(1, visits.get(node)));
+            int best = first;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < end; child++) {
+                int n = visits.get(child);
+                if (n == 0)
+                    return child;
+                double score = halfWins.get(child) / (2.0 * n) + exploration * Math.sqrt(logVisits / n);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = child;
+                }
+            }
+            return best;
+        }
+    }
+}
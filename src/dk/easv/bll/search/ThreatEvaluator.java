@@ -0,0 +1,132 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.WinLines;
+import dk.easv.bll.simulator.GameSimulator;
+
+/**
+ * Evaluates positions from counts of threats that are kept up to date move by move,
+ * so a leaf costs a few additions instead of a scan of the board.
+ *
+ * A player scores for every won microboard, for every macro line with two won microboards
+ * and the third still open, and for every line in an open microboard with two of their
+ * cells and the third empty. A move only changes the threats in its own microboard, and
+ * the macro lines only when it decides that microboard, so only those are counted again.
+ *
+ * Follow the simulator: call load() for a new position, played() after every apply() and
+ * undo() after every undo(). Not thread safe.
+ */
+public class ThreatEvaluator {
+    public static final int WON_MICROBOARD = 100;
+    public static final int MACRO_THREAT = 300;  // Two microboards of a macro line won, the third still open
+    public static final int MICRO_THREAT = 10;   // Two cells of a line in an open microboard, the third empty
+
+    private final int[] microThreats = new int[18]; // player*9 + microboard
+    private final int[] microTotal = new int[2];
+    private final int[] macroValue = new int[2];
+
+    // What played() changed, a game has at most 81 moves
+    private final int[] undoBoard = new int[81];
+    private final int[] undoThreats = new int[81 * 2];
+    private final int[] undoMacro = new int[81 * 2];
+    private int undoCount;
+
+    /**
+     * Counts everything from scratch and clears the undo history.
+     * @param simulator The position
+     */
+    public void load(GameSimulator simulator) {
+        undoCount = 0;
+        for (int player = 0; player < 2; player++) {
+            microTotal[player] = 0;
+            for (int microboard = 0; microboard < 9; microboard++) {
+                int threats = countMicroThreats(simulator, player, microboard);
+                microThreats[player * 9 + microboard] = threats;
+                microTotal[player] += threats;
+            }
+            macroValue[player] = countMacroValue(simulator, player);
+        }
+    }
+
+    /**
+     * Updates the counts after simulator.apply(move).
+     * @param simulator The simulator, after the move
+     * @param move The move that was played, a cell index
+     */
+    public void played(GameSimulator simulator, int move) {
+        int microboard = GameSimulator.microboardOf(move);
+        undoBoard[undoCount] = microboard;
+        for (int player = 0; player < 2; player++) {
+            int slot = player * 9 + microboard;
+            int threats = countMicroThreats(simulator, player, microboard);
+            undoThreats[undoCount * 2 + player] = microThreats[slot];
+            undoMacro[undoCount * 2 + player] = macroValue[player];
+            microTotal[player] += threats - microThreats[slot];
+            microThreats[slot] = threats;
+        }
+        if (!isOpen(simulator, microboard)) {
+            macroValue[0] = countMacroValue(simulator, 0);
+            macroValue[1] = countMacroValue(simulator, 1);
+        }
+        undoCount++;
+    }
+
+    /**
+     * Takes back the counts of the last played(), after simulator.undo().
+     */
+    public void undo() {
+        undoCount--;
+        int microboard = undoBoard[undoCount];
+        for (int player = 0; player < 2; player++) {
+            int slot = player * 9 + microboard;
+            int threats = undoThreats[undoCount * 2 + player];
+            microTotal[player] += threats - microThreats[slot];
+            microThreats[slot] = threats;
+            macroValue[player] = undoMacro[undoCount * 2 + player];
+        }
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return The player's score minus the opponent's
+     */
+    public int evaluate(int player) {
+        return value(player) - value(1 - player);
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return The player's own score
+     */
+    public int value(int player) {
+        return macroValue[player] + MICRO_THREAT * microTotal[player];
+    }
+
+    private static boolean isOpen(GameSimulator simulator, int microboard) {
+        int decided = simulator.getMacroboardMask(0) | simulator.getMacroboardMask(1) | simulator.getTiedMicroboards();
+        return (decided & 1 << microboard) == 0;
+    }
+
+    private static int countMicroThreats(GameSimulator simulator, int player, int microboard) {
+        if (!isOpen(simulator, microboard))
+            return 0;
+        int mine = simulator.getMicroboardMask(player, microboard);
+        int theirs = simulator.getMicroboardMask(1 - player, microboard);
+        int threats = 0;
+        for (int line : WinLines.LINES) {
+            if (Integer.bitCount(mine & line) == 2 && (theirs & line) == 0)
+                threats++;
+        }
+        return threats;
+    }
+
+    private static int countMacroValue(GameSimulator simulator, int player) {
+        int won = simulator.getMacroboardMask(player);
+        int closed = simulator.getMacroboardMask(1 - player) | simulator.getTiedMicroboards();
+        int value = WON_MICROBOARD * Integer.bitCount(won);
+        for (int line : WinLines.LINES) {
+            if (Integer.bitCount(won & line) == 2 && (closed & line) == 0)
+                value += MACRO_THREAT;
+        }
+        return value;
+    }
+}
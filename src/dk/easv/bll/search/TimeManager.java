@@ -0,0 +1,146 @@
+package dk.easv.bll.search;
+
+import dk.easv.bll.game.WinLines;
+import dk.easv.bll.simulator.GameSimulator;
+
+/**
+ * Splits the time for a move (IGameState.getTimePerMove()) into a soft and a hard deadline.
+ *
+ * The hard deadline is the time per move less a safety margin and the measured overhead,
+ * a search must have stopped there. The soft deadline is when a search should stop if it can,
+ * e.g. not start another depth. How far it is from the start depends on the position:
+ * with a single legal move there is nothing to think about (see getOnlyMove()), with a few
+ * moves not much, and when a player can win the game by taking one more microboard
+ * (a macroboard threat) the search gets all the time there is.
+ *
+ * The overhead is how late doMove returns after the hard deadline: the time a search takes to
+ * notice the clock, plus what the bot does after searching. finish() measures it on every move.
+ * The largest value is kept and shrinks by a quarter per move, so a slow move (e.g. a garbage
+ * collection) shortens the next ones for a while.
+ *
+ * A time manager belongs to one bot and is not thread safe.
+ */
+public class TimeManager {
+    // Time left for GameManager to get the move back
+    public static final int DEFAULT_MARGIN_MS = 30;
+    public static final int DEFAULT_CHECK_INTERVAL = 1024;
+
+    // Share of the time to the hard deadline that the soft deadline gets
+    private static final double FEW_MOVES_SHARE = 0.3;
+    private static final double NORMAL_SHARE = 0.8;
+    private static final double CRITICAL_SHARE = 1.0;
+    private static final int FEW_MOVES = 3;
+
+    private final int marginMs;
+    private final int checkMask;
+    private final int[] moveBuffer = new int[81];
+    private long overheadNanos;
+    private long startNanos;
+    private long softDeadline;
+    private long hardDeadline;
+    private int onlyMove = -1;
+    private boolean critical;
+    private boolean stopped;
+
+    public TimeManager() {
+        this(DEFAULT_MARGIN_MS, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * @param marginMs Milliseconds left over for GameManager to get the move back
+     * @param checkInterval shouldStop() looks at the clock once per this many nodes, a power of 2
+     */
+    public TimeManager(int marginMs, int checkInterval) {
+        if (marginMs < 0)
+            throw new IllegalArgumentException("marginMs must not be negative, was " + marginMs);
+        if (checkInterval < 1 || Integer.bitCount(checkInterval) != 1)
+            throw new IllegalArgumentException("checkInterval must be a power of 2, was " + checkInterval);
+        this.marginMs = marginMs;
+        this.checkMask = checkInterval - 1;
+    }
+
+    /**
+     * Plans the time for a move. Call it first thing in doMove.
+     * @param startNanos System.nanoTime() when doMove was called
+     * @param timePerMoveMs IGameState.getTimePerMove()
+     * @param position The position to move in
+     */
+    public void start(long startNanos, int timePerMoveMs, GameSimulator position) {
+        this.startNanos = startNanos;
+        stopped = false;
+        long available = Math.max(1_000_000L, (timePerMoveMs - marginMs) * 1_000_000L - overheadNanos);
+        hardDeadline = startNanos + available;
+
+        int count = position.legalMoves(moveBuffer);
+        onlyMove = count == 1 ? moveBuffer[0] : -1;
+        critical = hasMacroThreat(position, 0) || hasMacroThreat(position, 1);
+        double share = count <= 1 ? 0 : critical ? CRITICAL_SHARE : count <= FEW_MOVES ? FEW_MOVES_SHARE : NORMAL_SHARE;
+        softDeadline = startNanos + (long) (available * share);
+    }
+
+    /**
+     * Measures the overhead. Call it just before doMove returns.
+     */
+    public void finish() {
+        long late = System.nanoTime() - hardDeadline;
+        long limit = (hardDeadline - startNanos + overheadNanos) / 2; // Never more than half the time
+        overheadNanos = Math.min(limit, Math.max(late, overheadNanos - overheadNanos / 4));
+    }
+
+    /**
+     * For search loops: looks at the clock once every check interval nodes, and once the hard
+     * deadline has passed keeps returning true until the next start().
+     * @param nodes The number of nodes searched so far
+     * @return Returns true if the search must stop
+     */
+    public boolean shouldStop(long nodes) {
+        if (!stopped && (nodes & checkMask) == 0 && System.nanoTime() >= hardDeadline)
+            stopped = true;
+        return stopped;
+    }
+
+    /**
+     * @return The startNanos of the last start()
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return System.nanoTime() to stop at if the search can stop
+     */
+    public long getSoftDeadline() {
+        return softDeadline;
+    }
+
+    /**
+     * @return System.nanoTime() to stop at no matter what
+     */
+    public long getHardDeadline() {
+        return hardDeadline;
+    }
+
+    /**
+     * @return The move as a cell index if it is the only legal one, else -1
+     */
+    public int getOnlyMove() {
+        return onlyMove;
+    }
+
+    /**
+     * @return Returns true if a player can win the game by taking one more microboard
+     */
+    public boolean isCritical() {
+        return critical;
+    }
+
+    private static boolean hasMacroThreat(GameSimulator position, int player) {
+        int mine = position.getMacroboardMask(player);
+        int blocked = position.getMacroboardMask(1 - player) | position.getTiedMicroboards();
+        for (int line : WinLines.LINES) {
+            if ((line & blocked) == 0 && Integer.bitCount(line & mine) == 2)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,110 @@
+package dk.easv.bll.search;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size hash table of search results, keyed on the Zobrist key of the position.
+ *
+ * The table has buckets of two entries. The first entry keeps the deepest result and is only
+ * replaced by a result at least as deep or by one from a newer search (see newSearch()),
+ * the second entry always takes the newest result. An entry is a key and a long with
+ * the score, the best move, the depth, the bound and the search it came from.
+ *
+ * Scores are stored as they are, the caller adjusts win scores for the distance to the root.
+ */
+public class TranspositionTable {
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2; // The score is at least this, the search failed high
+    public static final int UPPER_BOUND = 3; // The score is at most this, the search failed low
+
+    public static final int NO_MOVE = 127;
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int bucketMask;
+    private int generation;
+
+    /**
+     * @param sizeBits The table holds 2^sizeBits entries
+     */
+    public TranspositionTable(int sizeBits) {
+        if (sizeBits < 1 || sizeBits > 30)
+            throw new IllegalArgumentException("sizeBits must be 1-30, was " + sizeBits);
+        keys = new long[1 << sizeBits];
+        entries = new long[1 << sizeBits];
+        bucketMask = (1 << (sizeBits - 1)) - 1;
+    }
+
+    /**
+     * Marks older entries as replaceable. Call it once per move, not per depth.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(entries, 0);
+    }
+
+    /**
+     * @param key Zobrist key of the position
+     * @return The entry, 0 if the position is not in the table. Read it with score(), move(), depth() and bound()
+     */
+    public long probe(long key) {
+        int slot = slotOf(key);
+        // Entries are never 0, the bound is always set
+        if (keys[slot] == key && entries[slot] != 0)
+            return entries[slot];
+        if (keys[slot + 1] == key && entries[slot + 1] != 0)
+            return entries[slot + 1];
+        return 0;
+    }
+
+    /**
+     * @param key Zobrist key of the position
+     * @param score The score of the position
+     * @param move The best move, or NO_MOVE
+     * @param depth The depth that was searched
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public void store(long key, int score, int move, int depth, int bound) {
+        long entry = (long) score << 32 | (long) generation << 24 | (long) (move & 0x7F) << 16
+                | (long) (depth & 0xFF) << 8 | bound;
+        int slot = slotOf(key);
+        long deep = entries[slot];
+        if (deep == 0 || keys[slot] == key || depth >= depth(deep) || generationOf(deep) != generation) {
+            keys[slot] = key;
+            entries[slot] = entry;
+        }
+        else {
+            keys[slot + 1] = key;
+            entries[slot + 1] = entry;
+        }
+    }
+
+    public static int score(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    public static int move(long entry) {
+        return (int) (entry >>> 16) & 0x7F;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 8) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) entry & 0xFF;
+    }
+
+    private static int generationOf(long entry) {
+        return (int) (entry >>> 24) & 0xFF;
+    }
+
+    private int slotOf(long key) {
+        // Fold in the high half, so all of the key picks the bucket
+        return (int) ((key ^ key >>> 32) & bucketMask) << 1;
+    }
+}
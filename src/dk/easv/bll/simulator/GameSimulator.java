@@ -0,0 +1,459 @@
+package dk.easv.bll.simulator;
+
+import dk.easv.bll.field.Field;
+import dk.easv.bll.field.IField;
+import dk.easv.bll.game.GameManager.GameOverState;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.PackedState;
+import dk.easv.bll.game.WinLines;
+import dk.easv.bll.game.Zobrist;
+import dk.easv.bll.move.IMove;
+import dk.easv.bll.move.Move;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A fast game simulator for bots, following the same rules as GameManager.
+ *
+ * The position is kept in 9 bit masks (see WinLines for the layout) and moves are
+ * plain cell indexes, x*9+y, the same as IMove.getIndex() and Move.ofIndex().
+ * Moves can be taken back with undo(), so a search can run on one simulator
+ * without copying it for every node. Nothing is allocated while playing.
+ *
+ * A simulator is not thread safe, give every thread its own (see SimulatorPool).
+ */
+public class GameSimulator {
+
+    public static final int NO_PLAYER = -1;
+
+    private static final int FULL = WinLines.FULL_MASK;
+
+    // Cell index (x*9+y) -> microboard, and -> position inside the microboard
+    private static final int[] BOARD = new int[81];
+    private static final int[] POS = new int[81];
+    // microboard*9+position -> cell index
+    private static final int[] CELL = new int[81];
+
+    static {
+        for (int x = 0; x < 9; x++)
+            for (int y = 0; y < 9; y++) {
+                int index = x * 9 + y;
+                BOARD[index] = (x / 3) * 3 + y / 3;
+                POS[index] = (x % 3) * 3 + y % 3;
+                CELL[BOARD[index] * 9 + POS[index]] = index;
+            }
+    }
+
+    private final int[] cells = new int[18]; // player*9 + microboard
+    private final int[] won = new int[2];
+    private int tied;
+    private int active;
+    private int currentPlayer;
+    private int moveNumber;
+    private int roundNumber;
+    private GameOverState gameOver;
+    private int winner;
+    private long zobristKey;
+
+    // A game has at most 81 moves, so the undo stack never grows
+    private final int[] undoMove = new int[81];
+    private final int[] undoActive = new int[81];
+    private final long[] undoKey = new long[81];
+    private int undoCount;
+
+    private final int[] moveBuffer = new int[81];
+
+    /**
+     * Creates a simulator on an empty board.
+     */
+    public GameSimulator() {
+        clear();
+    }
+
+    /**
+     * Creates a simulator on a copy of the given state.
+     * @param state The state to copy, it is not changed by the simulator
+     */
+    public GameSimulator(IGameState state) {
+        load(state);
+    }
+
+    public void clear() {
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = 0;
+        won[0] = 0;
+        won[1] = 0;
+        tied = 0;
+        active = FULL;
+        currentPlayer = 0;
+        moveNumber = 0;
+        roundNumber = 0;
+        gameOver = GameOverState.Active;
+        winner = NO_PLAYER;
+        zobristKey = Zobrist.active(FULL);
+        undoCount = 0;
+    }
+
+    /**
+     * Copies the state into the simulator. The player to move is taken from the move number.
+     * @param state The state to copy
+     */
+    public void load(IGameState state) {
+        clear();
+        IField field = state.getField();
+        for (int board = 0; board < 9; board++) {
+            cells[board] = field.getMicroboardMask(0, board);
+            cells[9 + board] = field.getMicroboardMask(1, board);
+        }
+
+        String[][] macroboard = field.getMacroboard();
+        active = 0;
+        for (int x = 0; x < 3; x++)
+            for (int y = 0; y < 3; y++) {
+                String id = macroboard[x][y];
+                int bit = 1 << (x * 3 + y);
+                if (id.equals(IField.AVAILABLE_FIELD))
+                    active |= bit;
+                else if (id.equals("0"))
+                    won[0] |= bit;
+                else if (id.equals("1"))
+                    won[1] |= bit;
+                else if (!id.equals(IField.EMPTY_FIELD))
+                    tied |= bit;
+            }
+
+        moveNumber = state.getMoveNumber();
+        roundNumber = state.getRoundNumber();
+        currentPlayer = moveNumber % 2;
+
+        if (WinLines.isWin(won[0]) || WinLines.isWin(won[1])) {
+            gameOver = GameOverState.Win;
+            winner = WinLines.isWin(won[0]) ? 0 : 1;
+        }
+        else if ((won[0] | won[1] | tied) == FULL)
+            gameOver = GameOverState.Tie;
+        zobristKey = Zobrist.hash(state);
+    }
+
+    /**
+     * Makes this simulator a copy of another one, without allocating.
+     * The undo history is not copied, the copy can't undo past this point.
+     * @param other The simulator to copy
+     */
+    public void copyFrom(GameSimulator other) {
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        won[0] = other.won[0];
+        won[1] = other.won[1];
+        tied = other.tied;
+        active = other.active;
+        currentPlayer = other.currentPlayer;
+        moveNumber = other.moveNumber;
+        roundNumber = other.roundNumber;
+        gameOver = other.gameOver;
+        winner = other.winner;
+        zobristKey = other.zobristKey;
+        undoCount = 0;
+    }
+
+    /**
+     * @return A new simulator with the same position
+     */
+    public GameSimulator copy() {
+        GameSimulator copy = new GameSimulator();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Builds a regular GameState with the simulator's position, e.g. to hand to a bot.
+     * @return A new GameState
+     */
+    public IGameState toGameState() {
+        GameState state = new GameState(new Field());
+        IField field = state.getField();
+        for (int index = 0; index < 81; index++) {
+            int bit = 1 << POS[index];
+            int board = BOARD[index];
+            if ((cells[board] & bit) != 0)
+                field.setPlayerId(index / 9, index % 9, "0");
+            else if ((cells[9 + board] & bit) != 0)
+                field.setPlayerId(index / 9, index % 9, "1");
+        }
+        for (int board = 0; board < 9; board++) {
+            int bit = 1 << board;
+            String id = IField.EMPTY_FIELD;
+            if ((active & bit) != 0)
+                id = IField.AVAILABLE_FIELD;
+            else if ((won[0] & bit) != 0)
+                id = "0";
+            else if ((won[1] & bit) != 0)
+                id = "1";
+            else if ((tied & bit) != 0)
+                id = "TIE";
+            field.setMacroboardId(board / 3, board % 3, id);
+        }
+        state.setMoveNumber(moveNumber);
+        state.setRoundNumber(roundNumber);
+        return state;
+    }
+
+    /**
+     * @return The position packed into two longs, see PackedState
+     */
+    public PackedState pack() {
+        return PackedState.encode(cells, active, currentPlayer);
+    }
+
+    /**
+     * @param move Cell index, x*9+y
+     * @return Returns true if the move can be played now
+     */
+    public boolean isLegal(int move) {
+        if (gameOver != GameOverState.Active || move < 0 || move >= 81)
+            return false;
+        int board = BOARD[move];
+        return (active & (1 << board)) != 0
+                && ((cells[board] | cells[9 + board]) & (1 << POS[move])) == 0;
+    }
+
+    /**
+     * Plays a move after checking that it is legal.
+     * @param move The move to play
+     * @return Returns true if the move was legal and played, false otherwise.
+     */
+    public boolean apply(IMove move) {
+        if (move == null || move.getX() < 0 || move.getX() >= 9 || move.getY() < 0 || move.getY() >= 9)
+            return false;
+        int index = move.getIndex();
+        if (!isLegal(index))
+            return false;
+        apply(index);
+        return true;
+    }
+
+    /**
+     * Plays a move for the current player. The move is not checked, it must be legal.
+     * @param move Cell index, x*9+y
+     */
+    public void apply(int move) {
+        int board = BOARD[move];
+        int boardBit = 1 << board;
+        int player = currentPlayer;
+
+        undoMove[undoCount] = move;
+        undoActive[undoCount] = active;
+        undoKey[undoCount] = zobristKey;
+        undoCount++;
+
+        int mine = cells[player * 9 + board] |= 1 << POS[move];
+        long key = zobristKey ^ Zobrist.cell(player, move) ^ Zobrist.side() ^ Zobrist.active(active);
+        moveNumber++;
+        if (moveNumber % 2 == 0)
+            roundNumber++;
+
+        if (WinLines.isWin(mine)) {
+            won[player] |= boardBit;
+            key ^= Zobrist.microboard(player == 0 ? Zobrist.STATUS_WON_0 : Zobrist.STATUS_WON_1, board);
+            if (WinLines.isWin(won[player])) {
+                gameOver = GameOverState.Win;
+                winner = player;
+            }
+            else if ((won[0] | won[1] | tied) == FULL)
+                gameOver = GameOverState.Tie;
+        }
+        else if ((mine | cells[(1 - player) * 9 + board]) == FULL) {
+            tied |= boardBit;
+            key ^= Zobrist.microboard(Zobrist.STATUS_TIE, board);
+            if ((won[0] | won[1] | tied) == FULL)
+                gameOver = GameOverState.Tie;
+        }
+
+        int decided = won[0] | won[1] | tied;
+        int next = 1 << POS[move];
+        active = (decided & next) == 0 ? next : ~decided & FULL;
+        zobristKey = key ^ Zobrist.active(active);
+        currentPlayer = 1 - player;
+    }
+
+    /**
+     * Takes back the last move played with apply().
+     * @return Returns true if a move was taken back, false if there was nothing to undo.
+     */
+    public boolean undo() {
+        if (undoCount == 0)
+            return false;
+
+        undoCount--;
+        int move = undoMove[undoCount];
+        int board = BOARD[move];
+        int player = 1 - currentPlayer;
+
+        cells[player * 9 + board] &= ~(1 << POS[move]);
+        // The board was still open before the move, so it can't have been decided
+        won[player] &= ~(1 << board);
+        tied &= ~(1 << board);
+        active = undoActive[undoCount];
+        zobristKey = undoKey[undoCount];
+        if (moveNumber % 2 == 0)
+            roundNumber--;
+        moveNumber--;
+        currentPlayer = player;
+        gameOver = GameOverState.Active;
+        winner = NO_PLAYER;
+        return true;
+    }
+
+    /**
+     * Writes the legal moves as cell indexes into the buffer, microboard by microboard.
+     * @param buffer Buffer to fill, must hold at least 81 moves
+     * @return The number of moves, 0 when the game is over
+     */
+    public int legalMoves(int[] buffer) {
+        if (gameOver != GameOverState.Active)
+            return 0;
+        int count = 0;
+        for (int boards = active; boards != 0; boards &= boards - 1) {
+            int board = Integer.numberOfTrailingZeros(boards);
+            int free = ~(cells[board] | cells[9 + board]) & FULL;
+            for (; free != 0; free &= free - 1)
+                buffer[count++] = CELL[board * 9 + Integer.numberOfTrailingZeros(free)];
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of legal moves, 0 when the game is over
+     */
+    public int countLegalMoves() {
+        if (gameOver != GameOverState.Active)
+            return 0;
+        int count = 0;
+        for (int boards = active; boards != 0; boards &= boards - 1) {
+            int board = Integer.numberOfTrailingZeros(boards);
+            count += 9 - Integer.bitCount(cells[board] | cells[9 + board]);
+        }
+        return count;
+    }
+
+    /**
+     * @param random Random generator
+     * @return A random legal move, or -1 when the game is over
+     */
+    public int randomMove(RandomGenerator random) {
+        int count = legalMoves(moveBuffer);
+        return count == 0 ? -1 : moveBuffer[random.nextInt(count)];
+    }
+
+    /**
+     * Plays random moves until the game is over.
+     * @param random Random generator
+     * @return The winner, or NO_PLAYER on a tie
+     */
+    public int randomPlayout(RandomGenerator random) {
+        while (gameOver == GameOverState.Active)
+            apply(moveBuffer[random.nextInt(legalMoves(moveBuffer))]);
+        return winner;
+    }
+
+    public GameOverState getGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * @return The player who won, or NO_PLAYER if the game is still going or tied
+     */
+    public int getWinner() {
+        return winner;
+    }
+
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * @return The Zobrist key of the position, see Zobrist
+     */
+    public long getZobristKey() {
+        return zobristKey;
+    }
+
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
+    public int getRoundNumber() {
+        return roundNumber;
+    }
+
+    /**
+     * @return The last move played with apply(), or -1 if there is none to undo
+     */
+    public int getLastMove() {
+        return undoCount == 0 ? -1 : undoMove[undoCount - 1];
+    }
+
+    /**
+     * @param player 0 or 1
+     * @param microboard Microboard index, (x/3)*3+(y/3)
+     * @return The 9 bit mask of cells the player owns in the microboard
+     */
+    public int getMicroboardMask(int player, int microboard) {
+        return cells[player * 9 + microboard];
+    }
+
+    /**
+     * @param player 0 or 1
+     * @return The 9 bit mask of microboards won by the player
+     */
+    public int getMacroboardMask(int player) {
+        return won[player];
+    }
+
+    /**
+     * @return The 9 bit mask of microboards that ended in a tie
+     */
+    public int getTiedMicroboards() {
+        return tied;
+    }
+
+    /**
+     * @return The 9 bit mask of microboards the current player may play in
+     */
+    public int getActiveMicroboards() {
+        return active;
+    }
+
+    /**
+     * @param move Cell index, x*9+y
+     * @return The microboard the cell is in
+     */
+    public static int microboardOf(int move) {
+        return BOARD[move];
+    }
+
+    /**
+     * @param move Cell index, x*9+y
+     * @return The position of the cell inside its microboard, also the microboard the opponent is sent to
+     */
+    public static int positionOf(int move) {
+        return POS[move];
+    }
+
+    /**
+     * @param microboard Microboard index
+     * @param position Position inside the microboard
+     * @return Cell index, x*9+y
+     */
+    public static int cellOf(int microboard, int position) {
+        return CELL[microboard * 9 + position];
+    }
+
+    /**
+     * @param move Cell index, x*9+y
+     * @return The shared Move for the index
+     */
+    public static IMove toMove(int move) {
+        return Move.ofIndex(move);
+    }
+}
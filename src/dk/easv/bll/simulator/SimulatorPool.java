@@ -0,0 +1,32 @@
+package dk.easv.bll.simulator;
+
+import java.util.ArrayDeque;
+
+/**
+ * Reuses GameSimulator instances, so searches that need many copies
+ * (e.g. one per playout) don't allocate a new simulator every time.
+ * A pool is not thread safe, give every thread its own.
+ */
+public class SimulatorPool {
+    private final ArrayDeque<GameSimulator> free = new ArrayDeque<>();
+
+    /**
+     * @param source The simulator to copy
+     * @return A pooled simulator holding a copy of the source position
+     */
+    public GameSimulator acquire(GameSimulator source) {
+        GameSimulator simulator = free.poll();
+        if (simulator == null)
+            simulator = new GameSimulator();
+        simulator.copyFrom(source);
+        return simulator;
+    }
+
+    /**
+     * Hands a simulator back to the pool, it must not be used afterwards.
+     * @param simulator The simulator to return
+     */
+    public void release(GameSimulator simulator) {
+        free.push(simulator);
+    }
+}
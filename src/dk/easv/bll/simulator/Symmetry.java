@@ -0,0 +1,235 @@
+package dk.easv.bll.simulator;
+
+import dk.easv.bll.game.PackedState;
+import dk.easv.bll.game.Zobrist;
+
+/**
+ * The 8 symmetries of the square (rotations and reflections) on the Ultimate Tic-Tac-Toe board.
+ *
+ * A symmetry of the 9x9 board moves the microboards around the macroboard and the cells inside
+ * every microboard in the same way, so it can be described as one permutation of the 9 squares
+ * of a 3x3 board. Because of that it also keeps the rules: the position of a move inside its
+ * microboard and the microboard the opponent is sent to are moved alike.
+ *
+ * Symmetries are numbered 0-7, 0 is the identity. Everything is looked up in tables.
+ *
+ * The canonical orientation of a position is the one with the smallest Zobrist key. key()
+ * gives the Zobrist key of a position as it looks after a symmetry without building it,
+ * from tables of the keys of every microboard layout, so canonical() costs about as much
+ * as making a few moves and is cheap enough for transposition table lookups.
+ */
+public final class Symmetry {
+    public static final int COUNT = 8;
+    public static final int IDENTITY = 0;
+    public static final int ALL = (1 << COUNT) - 1; // Bit mask of all the symmetries
+
+    // Symmetry -> 3x3 index (row*3+column) -> moved index
+    private static final int[][] SQUARE = new int[COUNT][9];
+    // Symmetry -> cell index (x*9+y) -> moved cell index
+    private static final int[][] CELL = new int[COUNT][81];
+    // Symmetry -> 9 bit mask -> moved mask
+    private static final short[][] MASK = new short[COUNT][512];
+    private static final int[] INVERSE = new int[COUNT];
+    // player*9 + microboard -> 9 bit mask of the player's cells -> XOR of their Zobrist keys
+    private static final long[][] CELL_KEYS = new long[18][512];
+    // Zobrist status -> 9 bit mask of microboards with that status -> XOR of their keys
+    private static final long[][] STATUS_KEYS = new long[3][512];
+
+    static {
+        for (int symmetry = 0; symmetry < COUNT; symmetry++) {
+            for (int row = 0; row < 3; row++)
+                for (int column = 0; column < 3; column++) {
+                    int r = row;
+                    int c = column;
+                    if (symmetry >= 4) // Reflect in the horizontal middle line first
+                        r = 2 - r;
+                    for (int turn = 0; turn < symmetry % 4; turn++) { // Then turn a quarter clockwise
+                        int turned = c;
+                        c = 2 - r;
+                        r = turned;
+                    }
+                    SQUARE[symmetry][row * 3 + column] = r * 3 + c;
+                }
+            for (int cell = 0; cell < 81; cell++) {
+                int microboard = SQUARE[symmetry][GameSimulator.microboardOf(cell)];
+                int position = SQUARE[symmetry][GameSimulator.positionOf(cell)];
+                CELL[symmetry][cell] = GameSimulator.cellOf(microboard, position);
+            }
+            for (int mask = 0; mask < 512; mask++) {
+                int moved = 0;
+                for (int square = 0; square < 9; square++) {
+                    if ((mask & 1 << square) != 0)
+                        moved |= 1 << SQUARE[symmetry][square];
+                }
+                MASK[symmetry][mask] = (short) moved;
+            }
+        }
+        for (int symmetry = 0; symmetry < COUNT; symmetry++)
+            for (int other = 0; other < COUNT; other++) {
+                boolean undoes = true;
+                for (int square = 0; square < 9; square++)
+                    undoes &= SQUARE[other][SQUARE[symmetry][square]] == square;
+                if (undoes)
+                    INVERSE[symmetry] = other;
+            }
+
+        for (int mask = 0; mask < 512; mask++) {
+            for (int square = 0; square < 9; square++) {
+                if ((mask & 1 << square) == 0)
+                    continue;
+                for (int player = 0; player < 2; player++)
+                    for (int microboard = 0; microboard < 9; microboard++)
+                        CELL_KEYS[player * 9 + microboard][mask] ^= Zobrist.cell(player, GameSimulator.cellOf(microboard, square));
+                for (int status = 0; status < 3; status++)
+                    STATUS_KEYS[status][mask] ^= Zobrist.microboard(status, square);
+            }
+        }
+    }
+
+    private Symmetry() {
+    }
+
+    /**
+     * @param symmetry 0-7
+     * @param move Cell index, x*9+y
+     * @return The cell the symmetry moves the cell to
+     */
+    public static int move(int symmetry, int move) {
+        return CELL[symmetry][move];
+    }
+
+    /**
+     * @param symmetry 0-7
+     * @param move Cell index in the moved board
+     * @return The cell that the symmetry moved there, the opposite of move()
+     */
+    public static int unmove(int symmetry, int move) {
+        return CELL[INVERSE[symmetry]][move];
+    }
+
+    /**
+     * @param symmetry 0-7
+     * @return The symmetry that undoes it
+     */
+    public static int inverse(int symmetry) {
+        return INVERSE[symmetry];
+    }
+
+    /**
+     * Moves the squares of a 3x3 mask, e.g. a microboard's cells or a set of microboards.
+     * @param symmetry 0-7
+     * @param mask 9 bit mask, bit row*3+column
+     * @return The moved mask
+     */
+    public static int mask(int symmetry, int mask) {
+        return MASK[symmetry][mask];
+    }
+
+    /**
+     * @param symmetry 0-7
+     * @param microboard Microboard index
+     * @return The microboard it is moved to
+     */
+    public static int microboard(int symmetry, int microboard) {
+        return SQUARE[symmetry][microboard];
+    }
+
+    /**
+     * Packs the position as it looks after the symmetry.
+     * @param simulator The position
+     * @param symmetry 0-7
+     * @return The packed, moved position
+     */
+    public static PackedState pack(GameSimulator simulator, int symmetry) {
+        int[] masks = new int[18];
+        for (int player = 0; player < 2; player++)
+            for (int microboard = 0; microboard < 9; microboard++)
+                masks[player * 9 + SQUARE[symmetry][microboard]] = MASK[symmetry][simulator.getMicroboardMask(player, microboard)];
+        return PackedState.encode(masks, MASK[symmetry][simulator.getActiveMicroboards()], simulator.getCurrentPlayer());
+    }
+
+    /**
+     * The Zobrist key of the position as it looks after the symmetry, the same key a GameSimulator
+     * would have after playing the moved moves. key(simulator, IDENTITY) is simulator.getZobristKey().
+     * @param simulator The position
+     * @param symmetry 0-7
+     * @return The key of the moved position
+     */
+    public static long key(GameSimulator simulator, int symmetry) {
+        int[] squares = SQUARE[symmetry];
+        short[] masks = MASK[symmetry];
+        long key = 0;
+        for (int microboard = 0; microboard < 9; microboard++) {
+            int moved = squares[microboard];
+            key ^= CELL_KEYS[moved][masks[simulator.getMicroboardMask(0, microboard)]]
+                    ^ CELL_KEYS[9 + moved][masks[simulator.getMicroboardMask(1, microboard)]];
+        }
+        key ^= STATUS_KEYS[Zobrist.STATUS_WON_0][masks[simulator.getMacroboardMask(0)]]
+                ^ STATUS_KEYS[Zobrist.STATUS_WON_1][masks[simulator.getMacroboardMask(1)]]
+                ^ STATUS_KEYS[Zobrist.STATUS_TIE][masks[simulator.getTiedMicroboards()]]
+                ^ Zobrist.active(masks[simulator.getActiveMicroboards()]);
+        if (simulator.getCurrentPlayer() == 1)
+            key ^= Zobrist.side();
+        return key;
+    }
+
+    /**
+     * Finds the symmetry that gives the canonical orientation, the one with the smallest key,
+     * so that all 8 versions of a position agree on one of them. Use move() to take moves into
+     * that orientation, and unmove() to bring them back.
+     * @param simulator The position
+     * @return The symmetry, 0-7
+     */
+    public static int canonical(GameSimulator simulator) {
+        return canonical(simulator, ALL);
+    }
+
+    /**
+     * Like canonical(GameSimulator), but only tries some of the symmetries. They must form a group,
+     * like the ones stabilizer() returns, or positions that are the same won't agree.
+     * @param simulator The position
+     * @param symmetries Bit mask of the symmetries to try, bit 0 (the identity) must be set
+     * @return The symmetry, 0-7
+     */
+    public static int canonical(GameSimulator simulator, int symmetries) {
+        int best = IDENTITY;
+        long smallest = simulator.getZobristKey();
+        for (int rest = symmetries & ~1; rest != 0; rest &= rest - 1) {
+            int symmetry = Integer.numberOfTrailingZeros(rest);
+            long key = key(simulator, symmetry);
+            if (key < smallest) {
+                smallest = key;
+                best = symmetry;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param simulator The position
+     * @return The key of the canonical orientation, the same for all 8 versions of the position
+     */
+    public static long canonicalKey(GameSimulator simulator) {
+        long smallest = simulator.getZobristKey();
+        for (int symmetry = 1; symmetry < COUNT; symmetry++)
+            smallest = Math.min(smallest, key(simulator, symmetry));
+        return smallest;
+    }
+
+    /**
+     * The symmetries that leave the position as it is. Moves that these symmetries map onto each
+     * other lead to mirrored positions and have the same value. Positions further down can still
+     * be mirror images through other symmetries too, so canonicalise with canonical(GameSimulator)
+     * to catch all of them.
+     * @param simulator The position
+     * @return Bit mask of the symmetries, bit 0 (the identity) is always set
+     */
+    public static int stabilizer(GameSimulator simulator) {
+        int symmetries = 1;
+        for (int symmetry = 1; symmetry < COUNT; symmetry++) {
+            if (key(simulator, symmetry) == simulator.getZobristKey())
+                symmetries |= 1 << symmetry;
+        }
+        return symmetries;
+    }
+}
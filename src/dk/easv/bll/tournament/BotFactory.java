@@ -0,0 +1,48 @@
+package dk.easv.bll.tournament;
+
+import dk.easv.bll.bot.IBot;
+
+/**
+ * Loads bots by class name without going through DynamicBotClassHandler,
+ * so bots can be used where JavaFX is not available.
+ */
+public final class BotFactory {
+
+    public static final String BOT_PACKAGE = "dk.easv.bll.bot";
+
+    private BotFactory() {
+    }
+
+    /**
+     * Finds a bot class, either by its full name or by its simple name in the bot package.
+     * @param name E.g. "HyggeBot" or "dk.easv.bll.bot.HyggeBot"
+     * @return The bot class
+     * @throws ClassNotFoundException If there is no bot with that name
+     */
+    public static Class<? extends IBot> botClass(String name) throws ClassNotFoundException {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(name);
+        }
+        catch (ClassNotFoundException ex) {
+            clazz = Class.forName(BOT_PACKAGE + "." + name);
+        }
+        if (!IBot.class.isAssignableFrom(clazz) || clazz.isInterface())
+            throw new ClassNotFoundException(name + " is not a bot");
+        return clazz.asSubclass(IBot.class);
+    }
+
+    /**
+     * Creates a new instance of a bot, bots keep state so every thread needs its own.
+     * @param botClass The bot class, it needs a public constructor without arguments
+     * @return The new bot
+     */
+    public static IBot create(Class<? extends IBot> botClass) {
+        try {
+            return botClass.getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new IllegalArgumentException("Can't create " + botClass.getName(), ex);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package dk.easv.bll.tournament;
+
+import dk.easv.bll.game.stats.MoveStats;
+
+/**
+ * The totals of a match between two bots. Bot 1 and bot 2 take turns playing first,
+ * so the wins are counted per bot and not per player id.
+ */
+public class MatchResult {
+    private final String bot1;
+    private final String bot2;
+    private final long winsBot1;
+    private final long winsBot2;
+    private final long ties;
+    private final long elapsedNanos;
+    private final MoveStats moveStatsBot1;
+    private final MoveStats moveStatsBot2;
+
+    public MatchResult(String bot1, String bot2, long winsBot1, long winsBot2, long ties, long elapsedNanos,
+                       MoveStats moveStatsBot1, MoveStats moveStatsBot2) {
+        this.bot1 = bot1;
+        this.bot2 = bot2;
+        this.winsBot1 = winsBot1;
+        this.winsBot2 = winsBot2;
+        this.ties = ties;
+        this.elapsedNanos = elapsedNanos;
+        this.moveStatsBot1 = moveStatsBot1;
+        this.moveStatsBot2 = moveStatsBot2;
+    }
+
+    public String getBot1() {
+        return bot1;
+    }
+
+    public String getBot2() {
+        return bot2;
+    }
+
+    public long getWinsBot1() {
+        return winsBot1;
+    }
+
+    public long getWinsBot2() {
+        return winsBot2;
+    }
+
+    public long getTies() {
+        return ties;
+    }
+
+    public long getGames() {
+        return winsBot1 + winsBot2 + ties;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return Move times, timeouts and invalid moves of bot 1, they keep counting while the match runs
+     */
+    public MoveStats getMoveStatsBot1() {
+        return moveStatsBot1;
+    }
+
+    public MoveStats getMoveStatsBot2() {
+        return moveStatsBot2;
+    }
+
+    /**
+     * @return Same format as the simulation results in the GUI
+     */
+    @Override
+    public String toString() {
+        return bot1 + " vs " + bot2 + " | w/w/t " + winsBot1 + "/" + winsBot2 + "/" + ties;
+    }
+}
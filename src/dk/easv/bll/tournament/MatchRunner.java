@@ -0,0 +1,250 @@
+package dk.easv.bll.tournament;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.field.BitboardField;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.GameState;
+import dk.easv.bll.game.IGameState;
+import dk.easv.bll.game.stats.GameResult;
+import dk.easv.bll.game.stats.MoveStats;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plays a number of games between two bots without any GUI.
+ * Bot 1 plays first in the even games and bot 2 in the odd ones.
+ * The games run as separate tasks on a ForkJoinPool, so threads that finish
+ * short games keep taking work from threads stuck in long ones.
+ *
+ * A bot that makes an illegal move or throws an exception loses the game,
+ * so one broken bot can't stop a long run. With a timeout policy a bot that
+ * runs over its time can't hold up a worker thread either.
+ *
+ * Bots that search on several threads (e.g. RootParallelMCTSBot) take them from one pool
+ * shared by every search, with a thread per core. Games played in parallel split those threads
+ * between them instead of each bot starting a thread per core of its own.
+ */
+public class MatchRunner {
+    private static final Logger LOGGER = Logger.getLogger(MatchRunner.class.getName());
+
+    private final Class<? extends IBot> bot1;
+    private final Class<? extends IBot> bot2;
+    private int games = 1000;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int timePerMove = 1000;
+    private GameManager.TimeoutPolicy timeoutPolicy = null;
+    private Consumer<List<GameResult>> listener = results -> { };
+    private volatile boolean cancelled;
+    private volatile ResultAccumulator accumulator;
+    private volatile String name1;
+    private volatile String name2;
+    private volatile MoveStats statsBot1;
+    private volatile MoveStats statsBot2;
+    private volatile long start;
+
+    public MatchRunner(Class<? extends IBot> bot1, Class<? extends IBot> bot2) {
+        this.bot1 = bot1;
+        this.bot2 = bot2;
+    }
+
+    public MatchRunner setGames(int games) {
+        this.games = games;
+        return this;
+    }
+
+    /**
+     * @param parallelism The number of games played at the same time, defaults to the number of processors
+     * @return this
+     */
+    public MatchRunner setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public MatchRunner setTimePerMove(int milliSeconds) {
+        this.timePerMove = milliSeconds;
+        return this;
+    }
+
+    /**
+     * @param policy What happens when a bot runs over the time per move, see GameManager.setTimeoutPolicy.
+     *               Defaults to null, no deadline
+     * @return this
+     */
+    public MatchRunner setTimeoutPolicy(GameManager.TimeoutPolicy policy) {
+        this.timeoutPolicy = policy;
+        return this;
+    }
+
+    /**
+     * @param listener Gets the finished games in batches, see ResultAccumulator.
+     *                 It is called from the worker threads
+     * @return this
+     */
+    public MatchRunner setListener(Consumer<List<GameResult>> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Plays all the games and waits for them to finish, or until cancel() is called.
+     * @return The totals of the games that were played
+     * @throws InterruptedException If the calling thread is interrupted while waiting, the games are cancelled
+     */
+    public MatchResult run() throws InterruptedException {
+        // Also checks that both bots can be created before any game starts
+        name1 = BotFactory.create(bot1).getBotName();
+        name2 = BotFactory.create(bot2).getBotName();
+
+        start = System.nanoTime();
+        statsBot1 = new MoveStats(name1);
+        statsBot2 = new MoveStats(name2);
+        ResultAccumulator results = new ResultAccumulator(listener);
+        accumulator = results;
+        ThreadLocal<IBot[]> bots = ThreadLocal.withInitial(() -> new IBot[]{BotFactory.create(bot1), BotFactory.create(bot2)});
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(new Games(0, games, bots, results)).get();
+        }
+        catch (InterruptedException ex) {
+            cancel();
+            throw ex;
+        }
+        catch (ExecutionException ex) {
+            throw new IllegalStateException("Simulation failed", ex.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+        results.flush();
+        return getProgress();
+    }
+
+    /**
+     * The totals so far, can be called from any thread while the match is running.
+     * @return The totals, or null if the match has not started
+     */
+    public MatchResult getProgress() {
+        ResultAccumulator results = accumulator;
+        if (results == null)
+            return null;
+        return new MatchResult(name1, name2, results.getWinsBot1(), results.getWinsBot2(), results.getTies(),
+                System.nanoTime() - start, statsBot1, statsBot2);
+    }
+
+    /**
+     * Stops the match, games that are being played are finished but no new games are started.
+     * Can be called from any thread, a cancelled runner can't be started again.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * A range of games. Ranges are split in half until a task is a single game,
+     * so idle threads can steal the other halves while a long game is running.
+     */
+    private class Games extends RecursiveAction {
+        // ForkJoinTask is Serializable, but the tasks are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final transient ThreadLocal<IBot[]> bots;
+        private final transient ResultAccumulator results;
+
+        private Games(int from, int to, ThreadLocal<IBot[]> bots, ResultAccumulator results) {
+            this.from = from;
+            this.to = to;
+            this.bots = bots;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Games(from, middle, bots, results), new Games(middle, to, bots, results));
+                return;
+            }
+            if (to == from || cancelled)
+                return;
+
+            // Every worker thread has its own bots, bots are not thread safe
+            IBot[] players = bots.get();
+            boolean swapped = from % 2 == 1;
+            IBot player0 = swapped ? players[1] : players[0];
+            IBot player1 = swapped ? players[0] : players[1];
+
+            int[] timeouts = new int[2];
+            GameResult.Winner winner = playGame(player0, player1,
+                    swapped ? statsBot2 : statsBot1, swapped ? statsBot1 : statsBot2, timeouts);
+            // A bot that timed out may still be running, the next game needs a new one
+            if (timeouts[0] > 0)
+                players[swapped ? 1 : 0] = BotFactory.create(swapped ? bot2 : bot1);
+            if (timeouts[1] > 0)
+                players[swapped ? 0 : 1] = BotFactory.create(swapped ? bot1 : bot2);
+            results.add(new GameResult(player0.getBotName(), player1.getBotName(), winner), !swapped);
+        }
+    }
+
+    /**
+     * Plays a single game.
+     * @param player0 The bot that moves first
+     * @param player1 The other bot
+     * @return The winner
+     */
+    public GameResult.Winner playGame(IBot player0, IBot player1) {
+        return playGame(player0, player1, null, null, new int[2]);
+    }
+
+    private GameResult.Winner playGame(IBot player0, IBot player1, MoveStats stats0, MoveStats stats1, int[] timeouts) {
+        GameState state = new GameState(new BitboardField());
+        state.setTimePerMove(timePerMove);
+        GameManager game = new GameManager(state, player0, player1);
+        game.setTimeoutPolicy(timeoutPolicy);
+        game.setMoveStats(0, stats0);
+        game.setMoveStats(1, stats1);
+        try {
+            return playGame(game, player0, player1);
+        }
+        finally {
+            timeouts[0] = game.getTimeouts(0);
+            timeouts[1] = game.getTimeouts(1);
+        }
+    }
+
+    private GameResult.Winner playGame(GameManager game, IBot player0, IBot player1) {
+        IGameState state = game.getCurrentState();
+
+        while (game.getGameOver() == GameManager.GameOverState.Active
+                && state.getField().hasAvailableMoves()) {
+            int player = game.getCurrentPlayer();
+            boolean valid;
+            try {
+                valid = game.updateGame();
+            }
+            catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, (player == 0 ? player0 : player1).getBotName() + " crashed", ex);
+                valid = false;
+            }
+            if (!valid)
+                return player == 0 ? GameResult.Winner.player1 : GameResult.Winner.player0;
+        }
+
+        if (game.getGameOver() != GameManager.GameOverState.Win)
+            return GameResult.Winner.tie;
+        // The player is switched after the winning move
+        return game.getCurrentPlayer() == 1 ? GameResult.Winner.player0 : GameResult.Winner.player1;
+    }
+}
@@ -0,0 +1,113 @@
+package dk.easv.bll.tournament;
+
+import dk.easv.bll.game.stats.GameResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Collects the results of a match from many threads without locking.
+ *
+ * The totals are LongAdders, so threads finishing games at the same time don't fight
+ * over one counter, and they can be read at any time while the match is running.
+ * The GameResults are kept in a buffer per thread and handed to the listener in batches,
+ * when a buffer is full or has not been emptied for a while. flush() hands over what is
+ * left, it must only be called when no more results are being added.
+ */
+public class ResultAccumulator {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 100;
+
+    private final LongAdder winsBot1 = new LongAdder();
+    private final LongAdder winsBot2 = new LongAdder();
+    private final LongAdder ties = new LongAdder();
+
+    private final Consumer<List<GameResult>> listener;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final ConcurrentLinkedQueue<Buffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Buffer> buffer = ThreadLocal.withInitial(this::newBuffer);
+
+    /**
+     * @param listener Gets the results in batches, it is called from the threads adding results
+     */
+    public ResultAccumulator(Consumer<List<GameResult>> listener) {
+        this(listener, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * @param listener Gets the results in batches, it is called from the threads adding results
+     * @param batchSize The number of results a thread collects before handing them over
+     * @param flushIntervalMs The longest time a thread keeps results before handing them over
+     */
+    public ResultAccumulator(Consumer<List<GameResult>> listener, int batchSize, long flushIntervalMs) {
+        this.listener = listener;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+    }
+
+    /**
+     * Adds the result of one game.
+     * @param result The game
+     * @param bot1IsPlayer0 Whether bot 1 was player 0 in this game
+     */
+    public void add(GameResult result, boolean bot1IsPlayer0) {
+        if (result.getWinner() == GameResult.Winner.tie)
+            ties.increment();
+        else if ((result.getWinner() == GameResult.Winner.player0) == bot1IsPlayer0)
+            winsBot1.increment();
+        else
+            winsBot2.increment();
+        buffer.get().add(result);
+    }
+
+    /**
+     * Hands all buffered results to the listener.
+     */
+    public void flush() {
+        for (Buffer b : buffers)
+            b.handOver();
+    }
+
+    public long getWinsBot1() {
+        return winsBot1.sum();
+    }
+
+    public long getWinsBot2() {
+        return winsBot2.sum();
+    }
+
+    public long getTies() {
+        return ties.sum();
+    }
+
+    private Buffer newBuffer() {
+        Buffer b = new Buffer();
+        buffers.add(b);
+        return b;
+    }
+
+    private class Buffer {
+        private List<GameResult> results = new ArrayList<>();
+        private long lastHandOver = System.nanoTime();
+
+        private void add(GameResult result) {
+            results.add(result);
+            if (results.size() >= batchSize || System.nanoTime() - lastHandOver >= flushIntervalNanos)
+                handOver();
+        }
+
+        private void handOver() {
+            lastHandOver = System.nanoTime();
+            if (results.isEmpty())
+                return;
+            List<GameResult> batch = results;
+            results = new ArrayList<>();
+            listener.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package dk.easv.cli;
+
+import dk.easv.bll.book.OpeningBook;
+import dk.easv.bll.book.OpeningBookBuilder;
+
+import java.nio.file.Paths;
+
+/**
+ * Builds the opening book the bots read at start up, see OpeningBook.
+ *
+ * Usage: BuildBook [--plies n] [--time ms] [--threads n] [--out file]
+ *
+ * Every position with fewer than --plies moves is searched for --time milliseconds,
+ * symmetric positions only once. The book is written to opening.book unless --out says otherwise.
+ */
+public class BuildBook {
+
+    public static void main(String[] args) throws Exception {
+        OpeningBookBuilder builder = new OpeningBookBuilder();
+        String out = OpeningBook.DEFAULT_FILE;
+
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                usage();
+                return;
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--plies":
+                    builder.setPlies(Integer.parseInt(value));
+                    break;
+                case "--time":
+                    builder.setTimePerPosition(Integer.parseInt(value));
+                    break;
+                case "--threads":
+                    builder.setThreads(Integer.parseInt(value));
+                    break;
+                case "--out":
+                    out = value;
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+
+        int total = builder.positions().size();
+        System.out.println(total + " positions");
+        builder.setProgress(done -> {
+            if (done % 100 == 0 || done == total)
+                System.out.println(done + "/" + total);
+        });
+        long start = System.nanoTime();
+        int size = builder.build(Paths.get(out));
+        System.out.printf("Wrote %d positions to %s in %.1f s%n", size, out, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: BuildBook [--plies n] [--time ms] [--threads n] [--out file]");
+    }
+}
@@ -0,0 +1,102 @@
+package dk.easv.cli;
+
+import dk.easv.bll.bot.IBot;
+import dk.easv.bll.game.GameManager;
+import dk.easv.bll.game.stats.GameResult;
+import dk.easv.bll.tournament.BotFactory;
+import dk.easv.bll.tournament.MatchResult;
+import dk.easv.bll.tournament.MatchRunner;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Runs a bot vs bot simulation from the command line, without starting JavaFX.
+ *
+ * Usage: Tournament bot1 bot2 [--games n] [--threads n] [--time ms] [--timeout forfeit|random] [--out file.csv]
+ *
+ * Bots are given by class name, either the simple name of a bot in dk.easv.bll.bot
+ * or the full name. The totals are printed when the games are done, --out also
+ * writes one line per game. With --timeout a bot that doesn't move within --time
+ * forfeits the game or gets a random move instead.
+ */
+public class Tournament {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+
+        Class<? extends IBot> bot1 = BotFactory.botClass(args[0]);
+        Class<? extends IBot> bot2 = BotFactory.botClass(args[1]);
+        MatchRunner runner = new MatchRunner(bot1, bot2);
+        String out = null;
+
+        for (int i = 2; i < args.length; i++) {
+            if (i + 1 >= args.length) {
+                usage();
+                return;
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--games":
+                    runner.setGames(Integer.parseInt(value));
+                    break;
+                case "--threads":
+                    runner.setParallelism(Integer.parseInt(value));
+                    break;
+                case "--time":
+                    runner.setTimePerMove(Integer.parseInt(value));
+                    break;
+                case "--timeout":
+                    if (value.equals("forfeit"))
+                        runner.setTimeoutPolicy(GameManager.TimeoutPolicy.Forfeit);
+                    else if (value.equals("random"))
+                        runner.setTimeoutPolicy(GameManager.TimeoutPolicy.RandomMove);
+                    else {
+                        usage();
+                        return;
+                    }
+                    break;
+                case "--out":
+                    out = value;
+                    break;
+                default:
+                    usage();
+                    return;
+            }
+        }
+
+        MatchResult result;
+        if (out != null) {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(out)))) {
+                writer.println("date,player0,player1,winner");
+                runner.setListener(games -> writeResults(writer, games));
+                result = runner.run();
+            }
+        }
+        else
+            result = runner.run();
+
+        System.out.println(result);
+        System.out.println(result.getMoveStatsBot1());
+        System.out.println(result.getMoveStatsBot2());
+        double seconds = result.getElapsedNanos() / 1e9;
+        System.out.printf("%d games in %.1f s (%.1f games/s)%n", result.getGames(), seconds, result.getGames() / seconds);
+    }
+
+    private static void writeResults(PrintWriter writer, List<GameResult> games) {
+        synchronized (writer) {
+            for (GameResult game : games)
+                writer.println(game.getDate() + "," + game.getPlayer0() + "," + game.getPlayer1() + "," + game.getWinner());
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: Tournament bot1 bot2 [--games n] [--threads n] [--time ms] [--timeout forfeit|random] [--out file.csv]");
+    }
+}
@@ -0,0 +1,70 @@
+package dk.easv.gui;
+
+import dk.easv.bll.game.stats.GameResult;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Moves simulation results from the worker threads to the StatsModel.
+ * Workers only add to a queue, and the FX thread empties it every 100 ms with a
+ * single addAll, so a long simulation can't flood the FX event queue.
+ */
+public class ResultPublisher {
+    private static final Duration INTERVAL = Duration.millis(100);
+
+    private final ConcurrentLinkedQueue<GameResult> pending = new ConcurrentLinkedQueue<>();
+    private final StatsModel statsModel;
+    private final Supplier<String> status;
+    private final Timeline timeline;
+
+    /**
+     * @param statsModel The model to publish to
+     * @param status Gives the text for the stats window title, called on the FX thread
+     */
+    public ResultPublisher(StatsModel statsModel, Supplier<String> status) {
+        this.statsModel = statsModel;
+        this.status = status;
+        timeline = new Timeline(new KeyFrame(INTERVAL, e -> publishPending()));
+        timeline.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    /**
+     * Queues results, can be called from any thread.
+     * @param results The results to publish
+     */
+    public void publish(List<GameResult> results) {
+        pending.addAll(results);
+    }
+
+    /**
+     * Starts publishing, must be called on the FX thread.
+     */
+    public void start() {
+        timeline.play();
+    }
+
+    /**
+     * Publishes what is left and stops, must be called on the FX thread.
+     */
+    public void stop() {
+        timeline.stop();
+        publishPending();
+    }
+
+    private void publishPending() {
+        List<GameResult> batch = new ArrayList<>();
+        for (GameResult result = pending.poll(); result != null; result = pending.poll())
+            batch.add(result);
+        if (!batch.isEmpty())
+            statsModel.addGameResults(batch);
+        String text = status.get();
+        if (text != null)
+            statsModel.setLastSimulationResults(text);
+    }
+}
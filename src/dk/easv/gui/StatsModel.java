@@ -12,11 +12,16 @@ import javafx.beans.property.StringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import java.util.List;
+
 /**
  *
  * @author jeppjleemoritzled
  */
 public class StatsModel {
+    // Only the newest results are kept, so long simulations don't fill up memory
+    public static final int MAX_RESULTS = 10000;
+
     private final ObservableList<GameResult> gameResults = 
             FXCollections.observableArrayList();
     
@@ -41,6 +46,23 @@ public class StatsModel {
     
     public synchronized void addGameResult(GameResult gr) {
         gameResults.add(gr);
+        trimResults();
+    }
+
+    /**
+     * Adds a batch of results with a single list change.
+     * @param results The results to add
+     */
+    public synchronized void addGameResults(List<GameResult> results) {
+        if (results.size() > MAX_RESULTS)
+            results = results.subList(results.size() - MAX_RESULTS, results.size());
+        gameResults.addAll(results);
+        trimResults();
+    }
+
+    private void trimResults() {
+        if (gameResults.size() > MAX_RESULTS)
+            gameResults.remove(0, gameResults.size() - MAX_RESULTS);
     }
 
     public void clear() {
@@ -74,7 +74,7 @@ public class UTTTGameController implements Initializable {
 
             Thread t = new Thread(() -> {
                 while (model.getGameOverState() == GameManager.GameOverState.Active
-                        && model.getGameState().getField().getAvailableMoves().size()>0) {
+                        && model.getGameState().getField().hasAvailableMoves()) {
                     // FIX HERE, KEEPS ASKING FOR VALID MOVE IF BOT PLAYS INVALID
                     boolean isValid = doBotMove();
                     try {
@@ -243,7 +243,7 @@ public class UTTTGameController implements Initializable {
                         JFXButton btn = new JFXButton("");
                         btn.setButtonType(JFXButton.ButtonType.RAISED);
                         btn.getStyleClass().add("tictaccell");
-                        btn.setUserData(new Move(x + i * 3, y + k * 3));
+                        btn.setUserData(Move.of(x + i * 3, y + k * 3));
                         btn.setFocusTraversable(false);
                         btn.setOnMouseClicked(
                                 event -> {